@@ -0,0 +1,83 @@
+package com.example.api_gateway.cache;
+
+import com.example.api_gateway.dto.Product;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+@Component // Кэш продуктов по ID внутри шлюза (read-through)
+public class ProductCache {
+
+    // Число полос счетчиков инвалидаций (степень двойки)
+    private static final int EPOCH_STRIPES = 1024;
+
+    private final boolean enabled;
+    private final Cache<Long, Product> cache;
+    // Счетчики инвалидаций по полосам ID: ответ, загруженный до инвалидации продукта, не должен
+    // попасть в кэш после нее. Запись одного продукта не мешает кэшировать загрузки остальных -
+    // разве что тех немногих, чей ID попал в ту же полосу (они просто не попадут в кэш в этот раз)
+    private final AtomicLongArray invalidationEpochs = new AtomicLongArray(EPOCH_STRIPES);
+
+    public ProductCache(@Value("${gateway.cache.enabled:true}") boolean enabled,
+                        @Value("${gateway.cache.max-size:10000}") long maxSize,
+                        @Value("${gateway.cache.ttl:30s}") Duration ttl,
+                        MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)     // Вытеснение по размеру
+                .expireAfterWrite(ttl)    // и по времени жизни записи
+                .recordStats()            // Статистика попаданий/промахов/вытеснений для actuator
+                .build();
+        // Метрики cache.gets{result=hit|miss}, cache.evictions, cache.size с тегом cache=products
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "products");
+    }
+
+    // Возвращает продукт из кэша, а при промахе - результат loader, который затем кладется в кэш.
+    // Пустой Mono (продукт не найден) не кэшируется
+    public Mono<Product> getOrLoad(Long id, Supplier<Mono<Product>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return Mono.defer(() -> {
+            Product cached = cache.getIfPresent(id);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            long epoch = invalidationEpochs.get(stripe(id));
+            return loader.get().doOnNext(product -> put(id, product, epoch));
+        });
+    }
+
+    // Удаляет продукт из кэша; вызывается до и после записи, проходящей через шлюз
+    public void invalidate(Long id) {
+        if (!enabled) {
+            return;
+        }
+        invalidationEpochs.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    private void put(Long id, Product product, long epoch) {
+        int stripe = stripe(id);
+        if (invalidationEpochs.get(stripe) != epoch) {
+            return; // Во время загрузки была запись - ответ мог устареть
+        }
+        cache.put(id, product);
+        // Инвалидация могла случиться между проверкой и put - перепроверяем
+        if (invalidationEpochs.get(stripe) != epoch) {
+            cache.invalidate(id);
+        }
+    }
+
+    private static int stripe(Long id) {
+        return Long.hashCode(id) & (EPOCH_STRIPES - 1);
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.api_gateway.client;
+
+import com.example.api_gateway.client.balancer.CoreServiceBalancer;
+import com.example.common.tracing.RequestIds;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+@Component // Прозрачная пересылка запросов в core-service без разбора JSON
+public class CoreServiceProxy {
+
+    private static final int CHUNK_SIZE = 8192;
+    // Сколько буферов ответа core-service держим впереди записи клиенту
+    private static final int PREFETCH = 32;
+
+    // Заголовки соединения (hop-by-hop) относятся к конкретному TCP-соединению и не пересылаются
+    private static final Set<String> HOP_BY_HOP_HEADERS = caseInsensitive(
+            HttpHeaders.CONNECTION, "Keep-Alive", HttpHeaders.TRANSFER_ENCODING, HttpHeaders.TE,
+            HttpHeaders.TRAILER, HttpHeaders.UPGRADE, HttpHeaders.PROXY_AUTHORIZATION, "Proxy-Connection",
+            HttpHeaders.HOST);
+
+    private final WebClient coreServiceClient;
+    // Одновременные одинаковые GET-запросы списка разделяют один ответ core-service
+    private final ResponseCoalescer<String> sharedReads;
+
+    public CoreServiceProxy(WebClient coreServiceClient,
+                            @Value("${gateway.coalescing.enabled:true}") boolean coalescingEnabled,
+                            @Value("${gateway.coalescing.replay-chunks:256}") int replayChunks) {
+        this.coreServiceClient = coreServiceClient;
+        this.sharedReads = new ResponseCoalescer<>(coalescingEnabled, replayChunks, PREFETCH);
+    }
+
+    // Пересылает запрос клиента в core-service по пути path (строка запроса передается как есть).
+    // Тело запроса и ответа идут потоком буферов, статус и заголовки ответа core-service сохраняются
+    public Mono<ResponseEntity<StreamingResponseBody>> forward(HttpMethod method, String path, HttpServletRequest request) {
+        return forward(method, path, request, null);
+    }
+
+    // То же для запроса к конкретному шарду каталога; shard == null - любой экземпляр
+    public Mono<ResponseEntity<StreamingResponseBody>> forward(HttpMethod method, String path, HttpServletRequest request,
+                                                               Integer shard) {
+        return exchange(method, path, request, shard)
+                .map(upstream -> ResponseEntity.status(upstream.getStatusCode())
+                        .headers(responseHeaders(upstream.getHeaders()))
+                        .body(out -> writeBody(upstream.getBody(), out)));
+    }
+
+    // GET, ответ которого одновременные одинаковые запросы (путь, строка запроса, Accept и If-None-Match)
+    // получают из одного запроса к core-service. Тело при этом не собирается в памяти, а раздается
+    // всем по мере прихода (ResponseCoalescer)
+    public Mono<ResponseEntity<StreamingResponseBody>> forwardShared(String path, HttpServletRequest request) {
+        if (!sharedReads.isEnabled()) {
+            return forward(HttpMethod.GET, path, request);
+        }
+        String key = path + "?" + request.getQueryString()
+                + "|" + request.getHeader(HttpHeaders.ACCEPT)
+                + "|" + request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        return sharedReads.execute(key, () -> exchange(HttpMethod.GET, path, request, null))
+                .map(upstream -> ResponseEntity.status(upstream.getStatusCode())
+                        .headers(responseHeaders(upstream.getHeaders()))
+                        .body(out -> writeChunks(upstream.getBody().get(), out)));
+    }
+
+    // Забыть общие чтения в полете: вызывается при записи, чтобы чтения после нее
+    // не присоединялись к ответу, начатому до нее
+    public void forgetSharedReads() {
+        sharedReads.forgetAll();
+    }
+
+    private Mono<ResponseEntity<Flux<DataBuffer>>> exchange(HttpMethod method, String path, HttpServletRequest request,
+                                                          Integer shard) {
+        String query = request.getQueryString();
+        URI uri = URI.create(CoreServiceBalancer.BASE_URL + path + (query != null ? "?" + query : ""));
+        WebClient.RequestBodySpec spec = coreServiceClient.method(method)
+                .uri(uri)
+                .headers(headers -> copyRequestHeaders(request, headers));
+        if (shard != null) {
+            spec.attribute(CoreServiceBalancer.SHARD_ATTRIBUTE, shard);
+        }
+        if (hasBody(request)) {
+            // Чтение из потока сервлета блокирующее, поэтому не на потоках event loop клиента
+            Flux<DataBuffer> body = DataBufferUtils.readInputStream(request::getInputStream,
+                            DefaultDataBufferFactory.sharedInstance, CHUNK_SIZE)
+                    .subscribeOn(Schedulers.boundedElastic());
+            spec.body(BodyInserters.fromDataBuffers(body));
+        }
+        return spec.retrieve()
+                // Любой статус core-service (в том числе 4xx/5xx) отдаем клиенту как есть
+                .onStatus(status -> true, response -> Mono.empty())
+                .toEntityFlux(DataBuffer.class);
+    }
+
+    // Пишет буферы ответа core-service в ответ клиенту на потоке сервлета.
+    // Закрытие потока отменяет подписку, если клиент отключился раньше времени
+    private static void writeBody(Flux<DataBuffer> body, OutputStream out) throws IOException {
+        if (body == null) {
+            return;
+        }
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try (Stream<DataBuffer> buffers = body.toStream(PREFETCH)) {
+            Iterator<DataBuffer> iterator = buffers.iterator();
+            while (iterator.hasNext()) {
+                DataBuffer buffer = iterator.next();
+                try {
+                    int remaining;
+                    while ((remaining = buffer.readableByteCount()) > 0) {
+                        int length = Math.min(remaining, chunk.length);
+                        buffer.read(chunk, 0, length);
+                        out.write(chunk, 0, length);
+                    }
+                } finally {
+                    DataBufferUtils.release(buffer);
+                }
+            }
+        }
+    }
+
+    // То же для общего ответа: порции уже скопированы из буферов, закрытие потока - выход из общего чтения.
+    // Подключение к общему ответу - здесь, на потоке записи, а не при получении заголовков
+    private static void writeChunks(Stream<byte[]> body, OutputStream out) throws IOException {
+        try (body) {
+            Iterator<byte[]> iterator = body.iterator();
+            while (iterator.hasNext()) {
+                out.write(iterator.next());
+            }
+        }
+    }
+
+    private static boolean hasBody(HttpServletRequest request) {
+        return request.getContentLengthLong() > 0 || request.getHeader(HttpHeaders.TRANSFER_ENCODING) != null;
+    }
+
+    private static void copyRequestHeaders(HttpServletRequest request, HttpHeaders headers) {
+        for (String name : Collections.list(request.getHeaderNames())) {
+            if (!HOP_BY_HOP_HEADERS.contains(name)) {
+                headers.addAll(name, Collections.list(request.getHeaders(name)));
+            }
+        }
+    }
+
+    // X-Request-Id в ответ уже поставил RouteMetricsFilter - значение то же, второй заголовок не нужен
+    private static HttpHeaders responseHeaders(HttpHeaders upstream) {
+        HttpHeaders headers = new HttpHeaders();
+        upstream.forEach((name, values) -> {
+            if (!HOP_BY_HOP_HEADERS.contains(name) && !RequestIds.HEADER.equalsIgnoreCase(name)) {
+                headers.addAll(name, values);
+            }
+        });
+        return headers;
+    }
+
+    private static Set<String> caseInsensitive(String... names) {
+        Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        Collections.addAll(set, names);
+        return set;
+    }
+}
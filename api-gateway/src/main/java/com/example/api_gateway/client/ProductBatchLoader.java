@@ -0,0 +1,135 @@
+package com.example.api_gateway.client;
+
+import com.example.api_gateway.client.balancer.CoreServiceBalancer;
+import com.example.api_gateway.dto.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Component // Микро-пакетирование одиночных запросов продукта по ID (в стиле DataLoader)
+public class ProductBatchLoader {
+
+    private final WebClient coreServiceClient;
+    private final CoreServiceBalancer balancer;
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxBatchSize;
+
+    // Ожидающие ответа запросы текущего пакета: ID -> подписчики. Защищено this
+    private Map<Long, List<Sinks.One<Product>>> pending = new LinkedHashMap<>();
+    // Таймер отправки текущего пакета по истечении окна
+    private Disposable flushTimer;
+
+    public ProductBatchLoader(WebClient coreServiceClient, CoreServiceBalancer balancer,
+                              @Value("${gateway.batching.enabled:false}") boolean enabled,
+                              @Value("${gateway.batching.window:2ms}") Duration window,
+                              @Value("${gateway.batching.max-size:100}") int maxBatchSize) {
+        this.coreServiceClient = coreServiceClient;
+        this.balancer = balancer;
+        this.enabled = enabled;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Запросы, пришедшие в течение окна, уходят в core-service одним GET /products?ids=...
+    // Пустой Mono, если продукта с таким ID нет
+    public Mono<Product> load(Long id) {
+        return Mono.defer(() -> {
+            Sinks.One<Product> sink = Sinks.one();
+            enqueue(id, sink);
+            return sink.asMono();
+        });
+    }
+
+    private void enqueue(Long id, Sinks.One<Product> sink) {
+        Map<Long, List<Sinks.One<Product>>> batch = null;
+        synchronized (this) {
+            pending.computeIfAbsent(id, key -> new ArrayList<>(1)).add(sink);
+            if (pending.size() >= maxBatchSize) {
+                batch = takePending();
+            } else if (flushTimer == null) {
+                // Первый запрос пакета запускает таймер окна
+                flushTimer = Schedulers.parallel().schedule(this::flushByTimer, window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (batch != null) {
+            send(batch); // Пакет заполнен - отправляем, не дожидаясь окна
+        }
+    }
+
+    private void flushByTimer() {
+        Map<Long, List<Sinks.One<Product>>> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    // Вызывается под this: забирает текущий пакет и сбрасывает таймер
+    private Map<Long, List<Sinks.One<Product>>> takePending() {
+        Map<Long, List<Sinks.One<Product>>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (flushTimer != null) {
+            flushTimer.dispose();
+            flushTimer = null;
+        }
+        return batch;
+    }
+
+    // Каталог из нескольких шардов: пакет делится по шардам-владельцам, каждому шарду - свой запрос
+    private void send(Map<Long, List<Sinks.One<Product>>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (balancer.shardCount() == 1) {
+            send(0, batch);
+            return;
+        }
+        Map<Integer, Map<Long, List<Sinks.One<Product>>>> byShard = new TreeMap<>();
+        batch.forEach((id, sinks) -> byShard.computeIfAbsent(balancer.shardOf(id), shard -> new LinkedHashMap<>()).put(id, sinks));
+        byShard.forEach(this::send);
+    }
+
+    private void send(int shard, Map<Long, List<Sinks.One<Product>>> batch) {
+        String ids = batch.keySet().stream().map(String::valueOf).collect(Collectors.joining(","));
+        coreServiceClient.get()
+                .uri("/products?ids={ids}", ids)
+                .attribute(CoreServiceBalancer.SHARD_ATTRIBUTE, shard)
+                .retrieve()
+                .toEntityFlux(Product.class)
+                // Эпоха ответа нужна для ETag продукта
+                .flatMapMany(entity -> {
+                    String epoch = entity.getHeaders().getFirst(Product.EPOCH_HEADER);
+                    return entity.getBody().doOnNext(product -> product.setEpoch(epoch));
+                })
+                .collectMap(Product::getId)
+                .subscribe(found -> batch.forEach((id, sinks) -> {
+                            Product product = found.get(id);
+                            for (Sinks.One<Product> sink : sinks) {
+                                if (product != null) {
+                                    sink.tryEmitValue(product);
+                                } else {
+                                    sink.tryEmitEmpty();
+                                }
+                            }
+                        }),
+                        error -> batch.values().forEach(sinks -> sinks.forEach(sink -> sink.tryEmitError(error))));
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.api_gateway.client;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Объединение одинаковых одновременных запросов (single-flight):
+// пока запрос по ключу выполняется, все новые вызовы с тем же ключом подписываются на него же
+// и получают тот же результат или ту же ошибку. После завершения запись удаляется,
+// поэтому следующий вызов снова идет в core-service и не видит устаревших данных.
+public class RequestCoalescer<K, V> {
+
+    private final boolean enabled;
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> share(k, call)));
+    }
+
+    // Забыть выполняющийся запрос: вызовы после этого пойдут в core-service заново
+    // (используется при записи, чтобы чтения после нее не присоединялись к старому запросу)
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    private Mono<V> share(K key, Supplier<Mono<V>> call) {
+        AtomicReference<Mono<V>> self = new AtomicReference<>();
+        // cache() - один подписчик на источник, результат раздается всем ожидающим;
+        // отмена одного из ожидающих не отменяет запрос для остальных
+        Mono<V> shared = call.get()
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .cache();
+        self.set(shared);
+        return shared;
+    }
+}
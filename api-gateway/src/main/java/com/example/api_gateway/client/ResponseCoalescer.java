@@ -0,0 +1,181 @@
+package com.example.api_gateway.client;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Объединение одинаковых одновременных запросов с потоковым ответом (single-flight без сборки тела в памяти).
+// Ответ core-service читается один раз, а его порции раздаются всем участникам по мере прихода.
+// Первые history порций тела запоминаются (ограниченный replay): участник, начавший писать ответ,
+// пока общий ответ не ушел дальше этого окна, получает тело целиком с начала.
+// К телу участник подключается только когда начинает писать ответ клиенту - иначе участник,
+// ждущий свободного потока для записи, держал бы общий ответ для всех. Опоздавший участник
+// (окно уже пройдено) получает тело из собственного запроса к core-service.
+// Чтение общего ответа идет со скоростью самого медленного пишущего участника, так что в памяти
+// шлюза одновременно не больше history порций плюс очереди участников
+public class ResponseCoalescer<K> {
+
+    private final boolean enabled;
+    private final int history;
+    private final int prefetch;
+    private final ConcurrentMap<K, Shared> inFlight = new ConcurrentHashMap<>();
+
+    public ResponseCoalescer(boolean enabled, int history, int prefetch) {
+        if (history <= 0 || prefetch <= 0) {
+            throw new IllegalArgumentException("history and prefetch must be positive");
+        }
+        this.enabled = enabled;
+        this.history = history;
+        this.prefetch = prefetch;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Статус и заголовки ответа core-service и тело порциями. Тело открывается при записи ответа
+    // (Supplier.get()); открытый Stream нужно дочитать или закрыть
+    public Mono<ResponseEntity<Supplier<Stream<byte[]>>>> execute(K key,
+                                                                  Supplier<Mono<ResponseEntity<Flux<DataBuffer>>>> call) {
+        if (!enabled) {
+            return call.get().map(response -> withBody(response, () -> chunks(response.getBody()).toStream(prefetch)));
+        }
+        return Mono.defer(() -> {
+            Shared shared;
+            while (!(shared = inFlight.computeIfAbsent(key, k -> new Shared(k, call.get()))).joinable()) {
+                // Окно уже пройдено, а запись еще не убрана - убираем и начинаем новый запрос
+                inFlight.remove(key, shared);
+            }
+            Shared joined = shared;
+            return joined.head.map(head -> withBody(head, () -> {
+                Stream<byte[]> body = joined.join();
+                return body != null ? body : repeat(call, head.getStatusCode());
+            }));
+        });
+    }
+
+    // Забыть выполняющиеся запросы: вызовы после этого пойдут в core-service заново
+    // (используется при записи, чтобы чтения после нее не присоединялись к ответу, начатому до нее)
+    public void forgetAll() {
+        inFlight.clear();
+    }
+
+    // Тело для опоздавшего участника: заголовки ему уже отданы из общего ответа, поэтому
+    // годится только ответ с тем же статусом. Иначе запись прерывается ошибкой
+    private Stream<byte[]> repeat(Supplier<Mono<ResponseEntity<Flux<DataBuffer>>>> call, HttpStatusCode status) {
+        return call.get()
+                .flatMapMany(response -> {
+                    if (!status.equals(response.getStatusCode())) {
+                        chunks(response.getBody()).subscribe();
+                        return Flux.error(new IllegalStateException("Repeated request answered "
+                                + response.getStatusCode() + " instead of " + status));
+                    }
+                    return chunks(response.getBody());
+                })
+                .toStream(prefetch);
+    }
+
+    private static <T> ResponseEntity<T> withBody(ResponseEntity<?> head, T body) {
+        return ResponseEntity.status(head.getStatusCode()).headers(head.getHeaders()).body(body);
+    }
+
+    // Буферы WebClient переносим в byte[] и сразу освобождаем: одну порцию пишут несколько участников
+    private static Flux<byte[]> chunks(Flux<DataBuffer> body) {
+        if (body == null) {
+            return Flux.empty();
+        }
+        return body.map(buffer -> {
+            try {
+                byte[] bytes = new byte[buffer.readableByteCount()];
+                buffer.read(bytes);
+                return bytes;
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        });
+    }
+
+    private final class Shared {
+
+        private final K key;
+        private final Mono<ResponseEntity<Void>> head;
+        private final Flux<byte[]> body;
+        // Под блокировкой this: пришли ли заголовки, сколько порций тела уже пришло, сколько участников
+        // читают тело и отменен ли ответ (отмененный не дочитать ни из replay, ни повторной подпиской)
+        private boolean headArrived;
+        private int emitted;
+        private int readers;
+        private boolean terminated;
+        private boolean cancelled;
+        private Disposable connection;
+
+        Shared(K key, Mono<ResponseEntity<Flux<DataBuffer>>> call) {
+            this.key = key;
+            // Ошибка запроса достается только тем, кто его ждал: следующий вызов идет в core-service заново
+            Mono<ResponseEntity<Flux<DataBuffer>>> response = call
+                    .doOnNext(entity -> headArrived())
+                    .doOnError(e -> terminated())
+                    .cache();
+            this.head = response.map(entity -> ResponseEntity.status(entity.getStatusCode())
+                    .headers(entity.getHeaders()).build());
+            // Тело запрашивается у core-service с подключением первого пишущего участника
+            this.body = response.flatMapMany(entity -> chunks(entity.getBody()))
+                    .doOnNext(chunk -> counted())
+                    .doOnTerminate(this::terminated)
+                    .replay(history)
+                    .autoConnect(1, connection -> this.connection = connection);
+        }
+
+        // Новый участник присоединяется, пока ответ не пришел или его уже кто-то пишет.
+        // Ответ с заголовками, который никто не пишет (его участники могли отключиться, не начав),
+        // не подхватывается: он мог бы так и провисеть незаконченным и раздаваться позже устаревшим
+        synchronized boolean joinable() {
+            return !terminated && !cancelled && emitted <= history && (!headArrived || readers > 0);
+        }
+
+        // Подключение к телу - под той же блокировкой, что и счет порций: пока пришло не больше
+        // history порций, replay хранит их все, и участник получит тело с начала
+        synchronized Stream<byte[]> join() {
+            if (cancelled || emitted > history) {
+                return null;
+            }
+            readers++;
+            return body.toStream(prefetch).onClose(this::left);
+        }
+
+        private synchronized void headArrived() {
+            headArrived = true;
+        }
+
+        private synchronized void counted() {
+            if (++emitted > history) {
+                inFlight.remove(key, this);
+            }
+        }
+
+        // Ответ закончился: новые запросы пойдут в core-service заново, а уже получившие
+        // заголовки участники дочитают тело из replay, если оно поместилось в окно
+        private synchronized void terminated() {
+            terminated = true;
+            inFlight.remove(key, this);
+        }
+
+        // Читающих участников не осталось, а ответ не дочитан - запрос к core-service отменяется
+        private synchronized void left() {
+            if (--readers == 0 && !terminated) {
+                cancelled = true;
+                inFlight.remove(key, this);
+                connection.dispose();
+            }
+        }
+    }
+}
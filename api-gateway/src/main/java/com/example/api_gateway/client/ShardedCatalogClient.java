@@ -0,0 +1,228 @@
+package com.example.api_gateway.client;
+
+import com.example.api_gateway.client.balancer.CoreServiceBalancer;
+import com.example.api_gateway.dto.Product;
+import com.example.api_gateway.dto.ProductListWriter;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+@Component // Запросы к каталогу, разделенному на шарды core-service: рассылка всем шардам и сборка ответа (scatter-gather)
+public class ShardedCatalogClient {
+
+    // Сколько продуктов каждого шарда держим впереди записи клиенту
+    private static final int PREFETCH = 256;
+    private static final Comparator<Product> BY_ID = Comparator.comparing(Product::getId);
+
+    private final WebClient coreServiceClient;
+    private final CoreServiceBalancer balancer;
+    private final ProductListWriter productListWriter;
+
+    public ShardedCatalogClient(WebClient coreServiceClient, CoreServiceBalancer balancer, ProductListWriter productListWriter) {
+        this.coreServiceClient = coreServiceClient;
+        this.balancer = balancer;
+        this.productListWriter = productListWriter;
+    }
+
+    public boolean isSharded() {
+        return balancer.shardCount() > 1;
+    }
+
+    // ID по шардам-владельцам, шарды по возрастанию номера; порядок ID внутри шарда сохраняется
+    public Map<Integer, List<Long>> groupByShard(Collection<Long> ids) {
+        Map<Integer, List<Long>> groups = new TreeMap<>();
+        for (Long id : ids) {
+            groups.computeIfAbsent(balancer.shardOf(id), shard -> new ArrayList<>()).add(id);
+        }
+        return groups;
+    }
+
+    // GET /products с теми же параметрами (ids, after, limit) и ответами, что у одного core-service.
+    // Каждый шард отдает свои продукты по возрастанию ID, шлюз сливает потоки слиянием k упорядоченных
+    // последовательностей и пишет результат клиенту по мере поступления, не собирая весь каталог в памяти
+    public Mono<ResponseEntity<StreamingResponseBody>> list(HttpServletRequest request, boolean ndjson) {
+        try {
+            String[] ids = request.getParameterValues("ids");
+            if (ids != null) {
+                return listByIds(ProductListWriter.parseIds(ids));
+            }
+            String afterParam = request.getParameter("after");
+            Long after = afterParam == null || afterParam.isEmpty() ? null : Long.valueOf(afterParam);
+            String limitParam = request.getParameter("limit");
+            Integer limit = limitParam == null ? null : Integer.valueOf(limitParam);
+            if (limit != null && limit <= 0) {
+                return Mono.just(ResponseEntity.badRequest().build());
+            }
+            return listAll(after, limit == null ? null : Math.min(limit, ProductListWriter.MAX_PAGE_SIZE), ndjson && limit == null,
+                    request.getHeader(HttpHeaders.IF_NONE_MATCH));
+        } catch (NumberFormatException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+    }
+
+    // DELETE /products/batch: каждому шарду - только его ID; результат - удаленные ID всех шардов
+    public Mono<List<Long>> deleteAll(List<Long> ids) {
+        return Flux.fromIterable(groupByShard(ids).entrySet())
+                .flatMapSequential(group -> coreServiceClient.method(HttpMethod.DELETE)
+                        .uri("/products/batch")
+                        .attribute(CoreServiceBalancer.SHARD_ATTRIBUTE, group.getKey())
+                        .bodyValue(group.getValue())
+                        .retrieve()
+                        .bodyToFlux(Long.class))
+                .collectList();
+    }
+
+    // Все продукты (pageSize == null) или страница. ETag ответа - ETag шардов через '+': If-None-Match клиента
+    // раскладывается обратно по шардам, и если ни один шард не изменился, отвечаем 304 без обхода каталога
+    private Mono<ResponseEntity<StreamingResponseBody>> listAll(Long after, Integer pageSize, boolean ndjson, String ifNoneMatch) {
+        int shards = balancer.shardCount();
+        List<String> shardTags = splitETag(ifNoneMatch, shards);
+        return Flux.range(0, shards)
+                .flatMapSequential(shard -> fetch(shard, after, pageSize, ndjson, shardTags == null ? null : shardTags.get(shard)))
+                .collectList()
+                .flatMap(responses -> {
+                    // Пустые тела ответов 304 дочитываем, чтобы соединения вернулись в пул
+                    responses.stream().filter(ShardedCatalogClient::notModified).forEach(response -> response.getBody().subscribe());
+                    if (responses.stream().allMatch(ShardedCatalogClient::notModified)) {
+                        return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(ifNoneMatch.trim()).<StreamingResponseBody>build());
+                    }
+                    // Изменился хотя бы один шард - у остальных (ответивших 304) нужен полный ответ
+                    return Flux.range(0, shards)
+                            .flatMapSequential(shard -> notModified(responses.get(shard))
+                                    ? fetch(shard, after, pageSize, ndjson, null)
+                                    : Mono.just(responses.get(shard)))
+                            .collectList()
+                            .flatMap(complete -> respond(complete, pageSize, ndjson));
+                })
+                .onErrorResume(WebClientResponseException.class,
+                        ex -> Mono.just(ResponseEntity.status(ex.getStatusCode()).<StreamingResponseBody>build()));
+    }
+
+    private Mono<ResponseEntity<Flux<Product>>> fetch(int shard, Long after, Integer pageSize, boolean ndjson, String ifNoneMatch) {
+        UriComponentsBuilder uri = UriComponentsBuilder.fromUriString(CoreServiceBalancer.BASE_URL + "/products");
+        if (after != null) {
+            uri.queryParam("after", after);
+        }
+        if (pageSize != null) {
+            uri.queryParam("limit", pageSize);
+        }
+        return coreServiceClient.get()
+                .uri(uri.build().toUri())
+                .attribute(CoreServiceBalancer.SHARD_ATTRIBUTE, shard)
+                .accept(ndjson ? ProductListWriter.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    if (ifNoneMatch != null) {
+                        headers.set(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+                    }
+                })
+                .retrieve()
+                .toEntityFlux(Product.class);
+    }
+
+    private Mono<ResponseEntity<StreamingResponseBody>> respond(List<ResponseEntity<Flux<Product>>> responses,
+                                                                Integer pageSize, boolean ndjson) {
+        String eTag = joinETags(responses);
+        List<Flux<Product>> bodies = responses.stream().map(ResponseEntity::getBody).collect(Collectors.toList());
+        @SuppressWarnings("unchecked")
+        Flux<Product> merged = Flux.mergeComparing(PREFETCH, BY_ID, bodies.toArray(new Flux[0]));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(ndjson ? ProductListWriter.APPLICATION_NDJSON : MediaType.APPLICATION_JSON);
+        if (eTag != null) {
+            response.eTag(eTag);
+        }
+        if (pageSize == null) {
+            // Закрытие потока после записи (или при уходе клиента) отменяет подписки на шарды
+            return Mono.just(response.body(out -> productListWriter.write(out, merged.toStream(PREFETCH), ndjson)));
+        }
+        // Страница: каждый шард прислал не больше pageSize, после слияния берем первые pageSize.
+        // Курсор следующей страницы нужен в заголовке, поэтому страницу (до 1000 продуктов) собираем целиком
+        return merged.take(pageSize).collectList().map(page -> {
+            if (page.size() == pageSize) {
+                response.header("X-Next-Cursor", String.valueOf(page.get(page.size() - 1).getId()));
+            }
+            return response.body(out -> productListWriter.write(out, page.stream(), false));
+        });
+    }
+
+    // ?ids=...: каждому шарду - его ID, ответ - в порядке запрошенных ID, отсутствующие пропускаются
+    private Mono<ResponseEntity<StreamingResponseBody>> listByIds(List<Long> ids) {
+        if (ids.size() > ProductListWriter.MAX_BATCH_SIZE) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return Flux.fromIterable(groupByShard(ids).entrySet())
+                .flatMap(group -> coreServiceClient.get()
+                        .uri("/products?ids={ids}", group.getValue().stream().map(String::valueOf).collect(Collectors.joining(",")))
+                        .attribute(CoreServiceBalancer.SHARD_ATTRIBUTE, group.getKey())
+                        .retrieve()
+                        .bodyToFlux(Product.class))
+                .collectMap(Product::getId)
+                .map(found -> {
+                    List<Product> ordered = new ArrayList<>(found.size());
+                    for (Long id : ids) {
+                        Product product = found.get(id);
+                        if (product != null) {
+                            ordered.add(product);
+                        }
+                    }
+                    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                            .<StreamingResponseBody>body(out -> productListWriter.write(out, ordered.stream(), false));
+                })
+                .onErrorResume(WebClientResponseException.class,
+                        ex -> Mono.just(ResponseEntity.status(ex.getStatusCode()).<StreamingResponseBody>build()));
+    }
+
+    private static boolean notModified(ResponseEntity<?> response) {
+        return response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value();
+    }
+
+    // "<тег шарда 0>+<тег шарда 1>+..."; null, если хотя бы один шард не прислал ETag
+    private static String joinETags(List<ResponseEntity<Flux<Product>>> responses) {
+        List<String> tags = new ArrayList<>(responses.size());
+        for (ResponseEntity<Flux<Product>> response : responses) {
+            String tag = response.getHeaders().getETag();
+            if (tag == null || !tag.startsWith("\"") || !tag.endsWith("\"") || tag.length() < 2) {
+                return null;
+            }
+            tags.add(tag.substring(1, tag.length() - 1));
+        }
+        return "\"" + String.join("+", tags) + "\"";
+    }
+
+    // Обратное к joinETags: ETag каждого шарда в кавычках; null, если заголовка нет или он не наш
+    private static List<String> splitETag(String ifNoneMatch, int shards) {
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        String tag = ifNoneMatch.trim();
+        if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+            return null;
+        }
+        String[] parts = tag.substring(1, tag.length() - 1).split("\\+", -1);
+        if (parts.length != shards) {
+            return null;
+        }
+        List<String> tags = new ArrayList<>(shards);
+        for (String part : parts) {
+            tags.add("\"" + part + "\"");
+        }
+        return tags;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.api_gateway.client.balancer;
+
+// Как выбирать экземпляр core-service для очередного запроса
+public enum BalancingPolicy {
+    // Два случайных доступных экземпляра, из них - с меньшим числом запросов в полете
+    POWER_OF_TWO_CHOICES,
+    // Доступный экземпляр с наименьшим числом запросов в полете
+    LEAST_REQUESTS
+}
@@ -0,0 +1,313 @@
+package com.example.api_gateway.client.balancer;
+
+import com.example.api_gateway.metrics.UpstreamTiming;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component // Клиентская балансировка запросов WebClient между экземплярами core-service
+public class CoreServiceBalancer implements ExchangeFilterFunction {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoreServiceBalancer.class);
+
+    // Логический адрес core-service: WebClient строит запросы на него, а фильтр подставляет выбранный экземпляр
+    public static final String BASE_URL = "http://core-service";
+    // Атрибут запроса WebClient с номером шарда (Integer). Без него запрос уходит на любой экземпляр любого шарда -
+    // так можно только создавать продукты: ID назначит тот шард, куда попал запрос
+    public static final String SHARD_ATTRIBUTE = CoreServiceBalancer.class.getName() + ".shard";
+
+    // Все экземпляры и они же по шардам
+    private final List<CoreServiceInstance> instances = new ArrayList<>();
+    private final List<List<CoreServiceInstance>> shards = new ArrayList<>();
+    // Шард для следующего создания продукта: новые продукты раскладываются по шардам по кругу
+    private final AtomicInteger nextCreateShard = new AtomicInteger();
+    private final long idBlockSize;
+    // Экземпляры одного шарда делят или реплицируют состояние: только тогда их может быть несколько
+    private final boolean replicatedInstances;
+    private final BalancingPolicy policy;
+    private final int failureThreshold;
+    private final long baseEjectionNanos;
+    private final long maxEjectionNanos;
+    private final Counter ejectionCounter;
+    private final MeterRegistry meterRegistry;
+
+    private final WebClient healthCheckClient;
+    private final boolean healthCheckEnabled;
+    private final String healthCheckPath;
+    private final Duration healthCheckInterval;
+    private final Duration healthCheckTimeout;
+    private Disposable healthChecks;
+
+    public CoreServiceBalancer(@Value("${core.service.urls:${core.service.url}}") String[] urls,
+                               @Value("${core.service.shards:}") String shardUrls,
+                               @Value("${core.service.id-block-size:1024}") long idBlockSize,
+                               @Value("${core.service.replicated-instances:false}") boolean replicatedInstances,
+                               @Value("${gateway.upstream.balancing:power_of_two_choices}") String policy,
+                               @Value("${gateway.upstream.ejection.consecutive-failures:5}") int failureThreshold,
+                               @Value("${gateway.upstream.ejection.base-time:10s}") Duration baseEjectionTime,
+                               @Value("${gateway.upstream.ejection.max-time:2m}") Duration maxEjectionTime,
+                               @Value("${gateway.upstream.health-check.enabled:true}") boolean healthCheckEnabled,
+                               @Value("${gateway.upstream.health-check.path:/actuator/health}") String healthCheckPath,
+                               @Value("${gateway.upstream.health-check.interval:5s}") Duration healthCheckInterval,
+                               @Value("${gateway.upstream.health-check.timeout:1s}") Duration healthCheckTimeout,
+                               ClientHttpConnector connector,
+                               MeterRegistry meterRegistry) {
+        // core.service.shards: шарды через ';', экземпляры одного шарда через ','. Не задано - один шард core.service.urls
+        String[][] groups = shardUrls.isBlank() ? new String[][]{urls}
+                : Arrays.stream(shardUrls.split(";")).map(group -> group.split(",")).toArray(String[][]::new);
+        for (String[] group : groups) {
+            if (Arrays.stream(group).allMatch(String::isBlank)) {
+                throw new IllegalArgumentException("Every core-service shard must list at least one instance");
+            }
+        }
+        // Экземпляр core-service держит каталог в своей памяти и своем журнале и ни с кем его не делит:
+        // два экземпляра одного шарда выдали бы одинаковые ID разным продуктам, а чтение зависело бы от того,
+        // куда попал запрос. Несколько экземпляров на шард - только если их состояние общее или реплицируется
+        // вне этого проекта, и это нужно явно подтвердить настройкой
+        if (!replicatedInstances) {
+            for (String[] group : groups) {
+                if (Arrays.stream(group).filter(url -> !url.isBlank()).count() > 1) {
+                    throw new IllegalArgumentException("Several instances per core-service shard require shared or "
+                            + "replicated state; set core.service.replicated-instances=true if they have it: "
+                            + String.join(",", group));
+                }
+            }
+        }
+        if (idBlockSize < 1) {
+            throw new IllegalArgumentException("core.service.id-block-size must be positive: " + idBlockSize);
+        }
+        this.idBlockSize = idBlockSize;
+        this.replicatedInstances = replicatedInstances;
+        this.policy = BalancingPolicy.valueOf(policy.trim().toUpperCase().replace('-', '_'));
+        this.failureThreshold = failureThreshold;
+        this.baseEjectionNanos = baseEjectionTime.toNanos();
+        this.maxEjectionNanos = maxEjectionTime.toNanos();
+        this.ejectionCounter = meterRegistry.counter("gateway.upstream.ejections");
+        this.meterRegistry = meterRegistry;
+        for (int shard = 0; shard < groups.length; shard++) {
+            List<CoreServiceInstance> shardInstances = new ArrayList<>();
+            for (String url : groups[shard]) {
+                if (!url.isBlank()) {
+                    shardInstances.add(register(URI.create(url.trim()), shard, meterRegistry));
+                }
+            }
+            shards.add(shardInstances);
+            instances.addAll(shardInstances);
+        }
+        // Проверки здоровья идут напрямую на экземпляр, мимо балансировщика, но через общий пул соединений
+        this.healthCheckClient = WebClient.builder().clientConnector(connector).build();
+        this.healthCheckEnabled = healthCheckEnabled;
+        this.healthCheckPath = healthCheckPath;
+        this.healthCheckInterval = healthCheckInterval;
+        this.healthCheckTimeout = healthCheckTimeout;
+        logger.info("Balancing core-service requests across {} instance(s) in {} shard(s) using {}",
+                instances.size(), shards.size(), this.policy);
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    // true, если у какого-то шарда несколько экземпляров с общим (реплицируемым) состоянием
+    public boolean hasReplicatedInstances() {
+        return replicatedInstances && shards.stream().anyMatch(shard -> shard.size() > 1);
+    }
+
+    // Шард, которому принадлежит ID: блок ID из idBlockSize подряд идущих принадлежит шарду (номер блока % число шардов),
+    // так же, как выдает ID IdAllocator в core-service
+    public int shardOf(long id) {
+        return (int) Math.floorMod((id - 1) / idBlockSize, (long) shards.size());
+    }
+
+    // Шард, который выдаст ID новому продукту (или пакету продуктов)
+    public int nextCreateShard() {
+        return Math.floorMod(nextCreateShard.getAndIncrement(), shards.size());
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            CoreServiceInstance instance = request.attribute(SHARD_ATTRIBUTE)
+                    .map(shard -> choose(shards.get((Integer) shard)))
+                    .orElseGet(this::choose);
+            ClientRequest routed = ClientRequest.from(request).url(instance.resolve(request.url())).build();
+            UpstreamTiming timing = UpstreamTiming.of(request);
+            instance.requestStarted();
+            long start = System.nanoTime();
+            return next.exchange(routed)
+                    .doOnNext(response -> {
+                        long elapsed = System.nanoTime() - start;
+                        if (timing != null) {
+                            timing.add(elapsed);
+                        }
+                        if (response.statusCode().isError()) {
+                            countError(instance, Integer.toString(response.statusCode().value()));
+                        }
+                        if (response.statusCode().is5xxServerError()) {
+                            instance.serverErrorTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                            onFailure(instance);
+                        } else {
+                            instance.successTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                            instance.onSuccess();
+                        }
+                    })
+                    .doOnError(error -> {
+                        long elapsed = System.nanoTime() - start;
+                        if (timing != null) {
+                            timing.add(elapsed);
+                        }
+                        countError(instance, "IO_ERROR");
+                        instance.errorTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                        onFailure(instance);
+                    })
+                    // Считаем запрос завершенным по получении заголовков ответа (или ошибке/отмене)
+                    .doFinally(signal -> instance.requestFinished());
+        });
+    }
+
+    CoreServiceInstance choose() {
+        return choose(instances);
+    }
+
+    // Выбирает экземпляр для запроса среди pool (все экземпляры или один шард). Если все исключены, выбирает среди всех:
+    // отказать во всех запросах хуже, чем отправить их на экземпляр, который, возможно, уже поднялся
+    CoreServiceInstance choose(List<CoreServiceInstance> pool) {
+        if (pool.size() == 1) {
+            return pool.get(0);
+        }
+        long now = System.nanoTime();
+        List<CoreServiceInstance> candidates = new ArrayList<>(pool.size());
+        for (CoreServiceInstance instance : pool) {
+            if (instance.isAvailable(now)) {
+                candidates.add(instance);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = pool;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        if (policy == BalancingPolicy.LEAST_REQUESTS) {
+            // Начинаем со случайной позиции, чтобы при равной нагрузке не выбирать всегда первый
+            int offset = random.nextInt(candidates.size());
+            CoreServiceInstance best = null;
+            for (int i = 0; i < candidates.size(); i++) {
+                CoreServiceInstance instance = candidates.get((offset + i) % candidates.size());
+                if (best == null || instance.outstanding() < best.outstanding()) {
+                    best = instance;
+                }
+            }
+            return best;
+        }
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        CoreServiceInstance a = candidates.get(first);
+        CoreServiceInstance b = candidates.get(second);
+        return b.outstanding() < a.outstanding() ? b : a;
+    }
+
+    void onFailure(CoreServiceInstance instance) {
+        if (instance.onFailure(failureThreshold)) {
+            long duration = instance.eject(System.nanoTime(), baseEjectionNanos, maxEjectionNanos);
+            ejectionCounter.increment();
+            logger.warn("Ejecting core-service instance {} for {} ms after {} consecutive failures",
+                    instance.url(), TimeUnit.NANOSECONDS.toMillis(duration), failureThreshold);
+        }
+    }
+
+    // Ответы core-service с ошибкой по коду статуса; IO_ERROR - ответа нет (разрыв, таймаут, отказ в соединении)
+    private void countError(CoreServiceInstance instance, String status) {
+        meterRegistry.counter("gateway.upstream.errors", "instance", instance.url(), "status", status).increment();
+    }
+
+    List<CoreServiceInstance> instances() {
+        return instances;
+    }
+
+    @PostConstruct
+    void startHealthChecks() {
+        if (healthCheckEnabled) {
+            healthChecks = Flux.interval(healthCheckInterval, Schedulers.parallel())
+                    .subscribe(tick -> instances.forEach(this::checkHealth));
+        }
+    }
+
+    @PreDestroy
+    void stopHealthChecks() {
+        if (healthChecks != null) {
+            healthChecks.dispose();
+        }
+    }
+
+    private void checkHealth(CoreServiceInstance instance) {
+        healthCheckClient.get()
+                .uri(instance.uri().resolve(healthCheckPath))
+                .retrieve()
+                .toBodilessEntity()
+                .timeout(healthCheckTimeout)
+                .subscribe(response -> {
+                    if (!instance.isHealthCheckPassing()) {
+                        logger.info("core-service instance {} passed health check, back in rotation", instance.url());
+                    }
+                    instance.healthCheckSucceeded();
+                }, error -> {
+                    if (instance.healthCheckFailed()) {
+                        logger.warn("core-service instance {} failed health check: {}", instance.url(), error.toString());
+                    }
+                });
+    }
+
+    private static CoreServiceInstance register(URI uri, int shard, MeterRegistry registry) {
+        String tag = uri.toString();
+        CoreServiceInstance instance = new CoreServiceInstance(uri, shard,
+                timer(registry, tag, "success"), timer(registry, tag, "server_error"), timer(registry, tag, "error"));
+        Gauge.builder("gateway.upstream.outstanding", instance, CoreServiceInstance::outstanding)
+                .description("Requests sent to a core-service instance and awaiting a response")
+                .tag("instance", tag)
+                .register(registry);
+        Gauge.builder("gateway.upstream.available", instance, i -> i.isAvailable(System.nanoTime()) ? 1 : 0)
+                .description("1 if the instance is in rotation, 0 if ejected or failing health checks")
+                .tag("instance", tag)
+                .register(registry);
+        return instance;
+    }
+
+    private static Timer timer(MeterRegistry registry, String instance, String outcome) {
+        return Timer.builder("gateway.upstream.requests")
+                .description("Time to response headers from a core-service instance")
+                .tags("instance", instance, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
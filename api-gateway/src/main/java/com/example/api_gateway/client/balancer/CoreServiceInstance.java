@@ -0,0 +1,123 @@
+package com.example.api_gateway.client.balancer;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Один экземпляр core-service и то, что балансировщик о нем знает: нагрузку, ошибки, исключение из ротации
+final class CoreServiceInstance {
+
+    private final URI uri;
+    private final int shard;
+    // Запросы, отправленные экземпляру и еще не получившие ответ
+    private final AtomicInteger outstanding = new AtomicInteger();
+    // Ошибки подряд (5xx, разрыв соединения, таймаут); успешный ответ обнуляет
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // Сколько раз экземпляр исключали; от этого растет время следующего исключения
+    private final AtomicInteger ejections = new AtomicInteger();
+    private volatile long ejectedUntilNanos;
+    private volatile boolean ejected;
+    private volatile boolean healthCheckPassing = true;
+
+    // Время до заголовков ответа по исходу запроса
+    final Timer successTimer;
+    final Timer serverErrorTimer;
+    final Timer errorTimer;
+
+    CoreServiceInstance(URI uri, int shard, Timer successTimer, Timer serverErrorTimer, Timer errorTimer) {
+        this.uri = uri;
+        this.shard = shard;
+        this.successTimer = successTimer;
+        this.serverErrorTimer = serverErrorTimer;
+        this.errorTimer = errorTimer;
+    }
+
+    URI uri() {
+        return uri;
+    }
+
+    String url() {
+        return uri.toString();
+    }
+
+    int shard() {
+        return shard;
+    }
+
+    // Тот же путь и строка запроса (уже закодированные), но на хосте этого экземпляра
+    URI resolve(URI requestUrl) {
+        return UriComponentsBuilder.fromUri(requestUrl)
+                .scheme(uri.getScheme())
+                .host(uri.getHost())
+                .port(uri.getPort())
+                .build(true)
+                .toUri();
+    }
+
+    boolean isAvailable(long nowNanos) {
+        return healthCheckPassing && (!ejected || nowNanos - ejectedUntilNanos >= 0);
+    }
+
+    int outstanding() {
+        return outstanding.get();
+    }
+
+    void requestStarted() {
+        outstanding.incrementAndGet();
+    }
+
+    void requestFinished() {
+        outstanding.decrementAndGet();
+    }
+
+    void onSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    // true, если ошибок подряд набралось threshold и экземпляр пора исключить
+    boolean onFailure(int threshold) {
+        if (consecutiveFailures.incrementAndGet() >= threshold) {
+            consecutiveFailures.set(0);
+            return true;
+        }
+        return false;
+    }
+
+    // Исключает экземпляр на baseTime * (номер исключения), но не дольше maxTime.
+    // Возвращает фактическое время исключения
+    long eject(long nowNanos, long baseTimeNanos, long maxTimeNanos) {
+        int count = ejections.incrementAndGet();
+        long duration = Math.min(baseTimeNanos * count, maxTimeNanos);
+        ejectedUntilNanos = nowNanos + duration;
+        ejected = true;
+        return duration;
+    }
+
+    // Успешная проверка здоровья: экземпляр снова в ротации, а счетчик исключений постепенно забывается
+    void healthCheckSucceeded() {
+        healthCheckPassing = true;
+        ejections.updateAndGet(count -> Math.max(0, count - 1));
+    }
+
+    // Возвращает true, если до этого проверки проходили
+    boolean healthCheckFailed() {
+        boolean wasPassing = healthCheckPassing;
+        healthCheckPassing = false;
+        return wasPassing;
+    }
+
+    boolean isHealthCheckPassing() {
+        return healthCheckPassing;
+    }
+
+    int ejections() {
+        return ejections.get();
+    }
+
+    long ejectedForMillis(long nowNanos) {
+        return ejected ? Math.max(0, TimeUnit.NANOSECONDS.toMillis(ejectedUntilNanos - nowNanos)) : 0;
+    }
+}
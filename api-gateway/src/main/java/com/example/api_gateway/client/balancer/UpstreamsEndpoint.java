@@ -0,0 +1,47 @@
+package com.example.api_gateway.client.balancer;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Component // GET /actuator/upstreams - состояние и нагрузка каждого экземпляра core-service
+@Endpoint(id = "upstreams")
+public class UpstreamsEndpoint {
+
+    private final CoreServiceBalancer balancer;
+
+    public UpstreamsEndpoint(CoreServiceBalancer balancer) {
+        this.balancer = balancer;
+    }
+
+    public record InstanceState(String url, int shard, boolean available, boolean healthCheckPassing, long ejectedForMillis,
+                                int ejections, int outstanding, long requests, long serverErrors, long errors,
+                                double meanLatencyMillis, double maxLatencyMillis) {
+    }
+
+    @ReadOperation
+    public List<InstanceState> upstreams() {
+        long now = System.nanoTime();
+        return balancer.instances().stream()
+                .map(instance -> {
+                    Timer[] timers = {instance.successTimer, instance.serverErrorTimer, instance.errorTimer};
+                    long count = 0;
+                    double total = 0;
+                    double max = 0;
+                    for (Timer timer : timers) {
+                        count += timer.count();
+                        total += timer.totalTime(TimeUnit.MILLISECONDS);
+                        max = Math.max(max, timer.max(TimeUnit.MILLISECONDS));
+                    }
+                    return new InstanceState(instance.url(), instance.shard(), instance.isAvailable(now), instance.isHealthCheckPassing(),
+                            instance.ejectedForMillis(now), instance.ejections(), instance.outstanding(),
+                            count, instance.serverErrorTimer.count(), instance.errorTimer.count(),
+                            count == 0 ? 0 : total / count, max);
+                })
+                .toList();
+    }
+}
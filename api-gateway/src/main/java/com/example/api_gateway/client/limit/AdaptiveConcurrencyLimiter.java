@@ -0,0 +1,290 @@
+package com.example.api_gateway.client.limit;
+
+import com.example.api_gateway.client.balancer.CoreServiceBalancer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Защита шлюза от перегрузки core-service. Стоит в WebClient перед балансировщиком и для каждого запроса:
+// - держит число запросов в полете в пределах адаптивного лимита (AIMD): лимит растет на 1 за каждые
+//   "лимит" быстрых ответов и умножается на backoff-ratio при ошибке, таймауте, 503 или ответе медленнее
+//   latency-threshold. Сверх лимита запрос сразу отклоняется (UpstreamOverloadedException -> 503),
+//   вместо того чтобы ждать в очереди пула соединений;
+// - отдает приоритет чтениям: записи отклоняются уже при write-share от лимита, чтения - только при полном;
+// - ограничивает время до заголовков ответа таймаутом маршрута (чтение по ID, список, запись);
+// - по желанию дублирует медленное чтение по ID (hedging): если ответа нет дольше заданного процентиля
+//   недавних задержек, тот же GET уходит еще раз (балансировщик выберет, скорее всего, другой экземпляр),
+//   берется первый ответ. Дубль отправляется только при свободном месте в лимите. Работает только при
+//   нескольких экземплярах шарда (core.service.replicated-instances): единственному экземпляру дубль лишь
+//   удвоил бы нагрузку.
+// Место в лимите занято, пока тело ответа не дочитано или не отменено: долгая потоковая выдача списка
+// нагружает core-service все это время. Таймаут маршрута относится только к ожиданию заголовков
+@Component
+public class AdaptiveConcurrencyLimiter implements ExchangeFilterFunction {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    // Сколько последних задержек чтения по ID учитывает порог hedging и как часто он пересчитывается
+    private static final int LATENCY_WINDOW = 1024;
+    private static final int HEDGE_DELAY_REFRESH = 128;
+
+    // Класс запроса к core-service - по нему выбираются таймаут и приоритет
+    public enum Route { READ, LIST, WRITE, FEED }
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final double writeShare;
+    private final Map<Route, Duration> timeouts = new EnumMap<>(Route.class);
+    private final boolean hedgingEnabled;
+    private final double hedgingPercentile;
+    private final long hedgingMinDelayNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Текущий лимит; меняется под this, читается без блокировки
+    private volatile double limit;
+    private long lastDecreaseNanos;
+
+    // Кольцо последних задержек чтения по ID и порог hedging по ним; защищено latencies
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private long latencySamples;
+    private volatile long hedgeDelayNanos = -1;
+
+    private final Map<Route, Counter> rejected = new EnumMap<>(Route.class);
+    private final Map<Route, Counter> timedOut = new EnumMap<>(Route.class);
+    private final Counter hedged;
+    private final Counter hedgeWins;
+
+    public AdaptiveConcurrencyLimiter(@Value("${gateway.limit.enabled:true}") boolean enabled,
+                                      @Value("${gateway.limit.initial:64}") int initialLimit,
+                                      @Value("${gateway.limit.min:8}") int minLimit,
+                                      @Value("${gateway.limit.max:512}") int maxLimit,
+                                      @Value("${gateway.limit.latency-threshold:500ms}") Duration latencyThreshold,
+                                      @Value("${gateway.limit.backoff-ratio:0.9}") double backoffRatio,
+                                      @Value("${gateway.limit.write-share:0.8}") double writeShare,
+                                      @Value("${gateway.upstream.timeout.read:2s}") Duration readTimeout,
+                                      @Value("${gateway.upstream.timeout.list:10s}") Duration listTimeout,
+                                      @Value("${gateway.upstream.timeout.write:5s}") Duration writeTimeout,
+                                      @Value("${gateway.hedging.enabled:false}") boolean hedgingEnabled,
+                                      @Value("${gateway.hedging.percentile:95}") double hedgingPercentile,
+                                      @Value("${gateway.hedging.min-delay:10ms}") Duration hedgingMinDelay,
+                                      CoreServiceBalancer balancer, MeterRegistry meterRegistry) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limits: initial " + initialLimit
+                    + ", min " + minLimit + ", max " + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1 || writeShare <= 0 || writeShare > 1) {
+            throw new IllegalArgumentException("gateway.limit.backoff-ratio must be in (0, 1) and write-share in (0, 1]");
+        }
+        if (hedgingPercentile <= 0 || hedgingPercentile >= 100) {
+            throw new IllegalArgumentException("gateway.hedging.percentile must be in (0, 100): " + hedgingPercentile);
+        }
+        this.enabled = enabled;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.writeShare = writeShare;
+        this.timeouts.put(Route.READ, readTimeout);
+        this.timeouts.put(Route.LIST, listTimeout);
+        this.timeouts.put(Route.WRITE, writeTimeout);
+        if (hedgingEnabled && !balancer.hasReplicatedInstances()) {
+            logger.warn("Hedging needs several instances of a core-service shard, disabled");
+            hedgingEnabled = false;
+        }
+        this.hedgingEnabled = hedgingEnabled;
+        this.hedgingPercentile = hedgingPercentile;
+        this.hedgingMinDelayNanos = hedgingMinDelay.toNanos();
+
+        Gauge.builder("gateway.limit.current", this, AdaptiveConcurrencyLimiter::limit)
+                .description("Current adaptive limit of concurrent core-service requests")
+                .register(meterRegistry);
+        Gauge.builder("gateway.limit.in_flight", inFlight, AtomicInteger::get)
+                .description("Core-service requests counted against the limit")
+                .register(meterRegistry);
+        for (Route route : List.of(Route.READ, Route.LIST, Route.WRITE)) {
+            String tag = route.name().toLowerCase();
+            rejected.put(route, meterRegistry.counter("gateway.limit.rejected", "route", tag));
+            timedOut.put(route, meterRegistry.counter("gateway.upstream.timeouts", "route", tag));
+        }
+        this.hedged = meterRegistry.counter("gateway.hedging.requests");
+        this.hedgeWins = meterRegistry.counter("gateway.hedging.wins");
+        logger.info("Upstream concurrency limit {} (min {}, max {}, shedding {}), hedging {}",
+                initialLimit, minLimit, maxLimit, enabled ? "on" : "off", hedgingEnabled ? "on" : "off");
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        Route route = route(request);
+        if (route == Route.FEED) {
+            // Лента изменений реплики - долгоживущий запрос, ее не ограничиваем и не учитываем
+            return next.exchange(request);
+        }
+        return Mono.defer(() -> {
+            if (!tryAcquire(route)) {
+                rejected.get(route).increment();
+                return Mono.error(new UpstreamOverloadedException(request.method().name(), inFlight.get(), limit()));
+            }
+            Mono<ClientResponse> primary = exchange(request, next, route);
+            long delay = hedgeDelayNanos;
+            if (!hedgingEnabled || route != Route.READ || delay < 0) {
+                return primary;
+            }
+            Mono<ClientResponse> hedge = Mono.delay(Duration.ofNanos(delay))
+                    .flatMap(tick -> {
+                        if (!tryAcquire(Route.READ)) {
+                            return Mono.<ClientResponse>empty();
+                        }
+                        hedged.increment();
+                        return exchange(request, next, Route.READ).doOnNext(response -> hedgeWins.increment());
+                    });
+            // Первый ответ побеждает, второй запрос отменяется; ответ, пришедший одновременно с победителем,
+            // освобождается. Ошибка основного запроса важнее пустого дубля
+            return Mono.firstWithValue(primary, hedge)
+                    .doOnDiscard(ClientResponse.class, response -> response.releaseBody().subscribe())
+                    .onErrorMap(error -> error instanceof NoSuchElementException && error.getSuppressed().length > 0,
+                            error -> error.getSuppressed()[0]);
+        });
+    }
+
+    // Один запрос к core-service под уже взятым местом в лимите
+    private Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next, Route route) {
+        long start = System.nanoTime();
+        AtomicBoolean responded = new AtomicBoolean();
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable releaseOnce = () -> {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+        };
+        return next.exchange(request)
+                .timeout(timeouts.get(route))
+                .doOnNext(response -> {
+                    long elapsed = System.nanoTime() - start;
+                    onSample(elapsed, response.statusCode().value() == HttpStatus.SERVICE_UNAVAILABLE.value());
+                    if (route == Route.READ) {
+                        recordLatency(elapsed);
+                    }
+                })
+                .doOnError(error -> {
+                    if (error instanceof TimeoutException) {
+                        timedOut.get(route).increment();
+                    }
+                    onSample(System.nanoTime() - start, true);
+                })
+                // С ответом место переходит к его телу и освобождается, когда тело дочитано, завершилось
+                // ошибкой или отменено (в том числе releaseBody у проигравшего дубля)
+                .map(response -> {
+                    responded.set(true);
+                    return response.mutate().body(body -> body.doFinally(signal -> releaseOnce.run())).build();
+                })
+                // Без ответа - по ошибке, таймауту или отмене до заголовков
+                .doFinally(signal -> {
+                    if (!responded.get()) {
+                        releaseOnce.run();
+                    }
+                });
+    }
+
+    // Записи занимают не больше writeShare от лимита: при росте нагрузки они отклоняются первыми
+    boolean tryAcquire(Route route) {
+        if (!enabled) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        double allowed = route == Route.WRITE ? limit * writeShare : limit;
+        while (true) {
+            int current = inFlight.get();
+            if (current >= Math.max(1, (int) allowed)) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    // AIMD: быстрый ответ прибавляет 1/limit (то есть +1 за "окно" из limit ответов), перегрузка
+    // уменьшает лимит в backoffRatio раз - не чаще раза за latencyThreshold, чтобы одна волна
+    // медленных ответов не обрушила лимит до минимума
+    synchronized void onSample(long latencyNanos, boolean dropped) {
+        if (dropped || latencyNanos > latencyThresholdNanos) {
+            long now = System.nanoTime();
+            if (now - lastDecreaseNanos >= latencyThresholdNanos) {
+                lastDecreaseNanos = now;
+                limit = Math.max(minLimit, limit * backoffRatio);
+            }
+        } else if (inFlight.get() * 2 >= limit) {
+            // Растем, только если лимит действительно используется - иначе он ничего не говорит о core-service
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    private void recordLatency(long nanos) {
+        if (!hedgingEnabled) {
+            return;
+        }
+        synchronized (latencies) {
+            latencies[(int) (latencySamples++ % LATENCY_WINDOW)] = nanos;
+            if (latencySamples >= LATENCY_WINDOW / 4 && latencySamples % HEDGE_DELAY_REFRESH == 0) {
+                int count = (int) Math.min(latencySamples, LATENCY_WINDOW);
+                long[] sorted = Arrays.copyOf(latencies, count);
+                Arrays.sort(sorted);
+                long percentile = sorted[Math.min(count - 1, (int) Math.ceil(count * hedgingPercentile / 100) - 1)];
+                hedgeDelayNanos = Math.max(hedgingMinDelayNanos, percentile);
+            }
+        }
+    }
+
+    // GET /products/changes - лента, GET /products без ids - список, прочие GET - чтение по ID, остальное - запись
+    static Route route(ClientRequest request) {
+        if (!HttpMethod.GET.equals(request.method())) {
+            return Route.WRITE;
+        }
+        String path = request.url().getPath();
+        if (path.endsWith("/products/changes")) {
+            return Route.FEED;
+        }
+        if (path.endsWith("/products")) {
+            String query = request.url().getQuery();
+            return query != null && query.contains("ids=") ? Route.READ : Route.LIST;
+        }
+        return Route.READ;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.api_gateway.client.limit;
+
+// Запрос к core-service не отправлен: достигнут текущий лимит одновременных запросов.
+// Клиент шлюза получает 503 с Retry-After
+public class UpstreamOverloadedException extends IllegalStateException {
+
+    public UpstreamOverloadedException(String method, int inFlight, int limit) {
+        super("Shedding " + method + " request: " + inFlight + " core-service requests in flight, limit " + limit);
+    }
+}
@@ -1,21 +1,74 @@
 package com.example.api_gateway.config;
 
+import com.example.api_gateway.client.balancer.CoreServiceBalancer;
+import com.example.api_gateway.client.limit.AdaptiveConcurrencyLimiter;
+import com.example.api_gateway.metrics.UpstreamTiming;
+import io.netty.channel.ChannelOption;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration // Помечаем класс как конфигурационный для Spring
 public class webClientConfig {
 
-    // Внедряем значение свойства 'core.service.url' из application.properties
-    @Value("${core.service.url}")
-    private String coreServiceUrl;
+    // Пул соединений к core-service (лимиты действуют на каждый экземпляр отдельно)
+    @Value("${gateway.upstream.pool.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${gateway.upstream.pool.pending-acquire-max:1000}")
+    private int pendingAcquireMax;
+
+    @Value("${gateway.upstream.pool.pending-acquire-timeout:2s}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${gateway.upstream.pool.max-idle-time:30s}")
+    private Duration maxIdleTime;
+
+    @Value("${gateway.upstream.pool.max-life-time:5m}")
+    private Duration maxLifeTime;
+
+    @Value("${gateway.upstream.pool.keep-alive:true}")
+    private boolean keepAlive;
+
+    @Value("${gateway.upstream.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Bean(destroyMethod = "dispose") // Один пул на весь шлюз: его делят все запросы и проверки здоровья
+    public ConnectionProvider coreServiceConnectionProvider() {
+        return ConnectionProvider.builder("core-service")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)      // Простаивающее соединение закрываем раньше, чем это сделает core-service
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(Duration.ofSeconds(30))
+                .metrics(true)                 // reactor.netty.connection.provider.* в actuator
+                .build();
+    }
+
+    @Bean
+    public ReactorClientHttpConnector coreServiceConnector(ConnectionProvider coreServiceConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(coreServiceConnectionProvider)
+                .keepAlive(keepAlive)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.toIntExact(connectTimeout.toMillis()));
+        return new ReactorClientHttpConnector(httpClient);
+    }
 
     @Bean // Создаем бин WebClient, который будет доступен для внедрения в другие компоненты
-    public WebClient coreServiceClient() {
+    public WebClient coreServiceClient(ReactorClientHttpConnector coreServiceConnector, CoreServiceBalancer balancer,
+                                       AdaptiveConcurrencyLimiter concurrencyLimiter) {
         return WebClient.builder()
-                .baseUrl(coreServiceUrl) // Устанавливаем базовый URL для core-service
+                .baseUrl(CoreServiceBalancer.BASE_URL) // Экземпляр core-service для каждого запроса выбирает балансировщик
+                .clientConnector(coreServiceConnector)
+                .filter(concurrencyLimiter) // Лимит, таймауты и hedging - снаружи: дубль чтения снова проходит балансировщик
+                .filter(balancer)
+                .defaultRequest(UpstreamTiming::propagate) // X-Request-Id и учет времени ожидания core-service
                 .build();
     }
 }
@@ -1,134 +1,281 @@
 package com.example.api_gateway.controller;
 
+import com.example.api_gateway.cache.ProductCache;
+import com.example.api_gateway.client.CoreServiceProxy;
+import com.example.api_gateway.client.ProductBatchLoader;
+import com.example.api_gateway.client.RequestCoalescer;
+import com.example.api_gateway.client.ShardedCatalogClient;
+import com.example.api_gateway.client.balancer.CoreServiceBalancer;
+import com.example.api_gateway.client.limit.UpstreamOverloadedException;
 import com.example.api_gateway.dto.Product ; // Импортируем DTO
+import com.example.api_gateway.dto.ProductListWriter;
+import com.example.api_gateway.replica.ProductReplica;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
-import reactor.core.publisher.Flux;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
 @RestController
 @RequestMapping("/api") // Все запросы к шлюзу будут начинаться с /api
 public class GatewayController {
 
+    // Журнал каждого запроса - на уровне DEBUG, ошибки core-service - WARN
+    private static final Logger logger = LoggerFactory.getLogger(GatewayController.class);
+
     private final WebClient coreServiceClient;
+    private final CoreServiceProxy coreServiceProxy;
+    private final ProductCache productCache;
+    private final ProductBatchLoader productBatchLoader;
+    private final ProductReplica productReplica;
+    private final CoreServiceBalancer balancer;
+    private final ShardedCatalogClient shardedCatalog;
+    private final ProductListWriter productListWriter;
+    // Одновременные GET-запросы одного продукта разделяют один запрос к core-service
+    private final RequestCoalescer<Long, Product> productByIdRequests;
 
     @Autowired
-    public GatewayController(WebClient coreServiceClient) {
+    public GatewayController(WebClient coreServiceClient, CoreServiceProxy coreServiceProxy, ProductCache productCache,
+                             ProductBatchLoader productBatchLoader, ProductReplica productReplica,
+                             CoreServiceBalancer balancer, ShardedCatalogClient shardedCatalog, ProductListWriter productListWriter,
+                             @Value("${gateway.coalescing.enabled:true}") boolean coalescingEnabled) {
         this.coreServiceClient = coreServiceClient;
+        this.coreServiceProxy = coreServiceProxy;
+        this.productCache = productCache;
+        this.productBatchLoader = productBatchLoader;
+        this.productReplica = productReplica;
+        this.balancer = balancer;
+        this.shardedCatalog = shardedCatalog;
+        this.productListWriter = productListWriter;
+        this.productByIdRequests = new RequestCoalescer<>(coalescingEnabled);
     }
 
     // --- CRUD Операции для Продуктов ---
 
     // Create - POST /api/products -> core-service: POST /products
+    // ID выдает шард, получивший запрос; при нескольких шардах создания идут в них по кругу
     @PostMapping("/products")
-    public Mono<ResponseEntity<Product>> createProduct(@RequestBody Product product) {
-        System.out.println("Gateway: Received POST /api/products, forwarding to core-service...");
-        return coreServiceClient.post() // Делаем POST запрос
-                .uri("/products")       // к эндпоинту /products в core-service
-                .bodyValue(product)     // Отправляем тело запроса (продукт)
-                .retrieve()             // Получаем ответ
-                // Преобразуем ответ в Mono<Product>
-                .bodyToMono(Product.class)
-                // Создаем ResponseEntity с полученным продуктом и статусом CREATED
-                .map(createdProduct -> {
-                    System.out.println("Gateway: Forwarded POST, received response from core-service.");
-                    return new ResponseEntity<>(createdProduct, HttpStatus.CREATED);
-                })
-                // Обработка ошибок (например, если core-service недоступен или вернул ошибку)
-                .onErrorResume(WebClientResponseException.class, ex -> {
-                    System.err.println("Gateway: Error forwarding POST: " + ex.getStatusCode() + " " + ex.getResponseBodyAsString());
-                    return Mono.just(ResponseEntity.status(ex.getStatusCode()).body(null)); // Возвращаем статус ошибки от core-service
-                })
-                .defaultIfEmpty(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build()); // Если ответ пустой (неожиданно)
+    public Mono<ResponseEntity<StreamingResponseBody>> createProduct(HttpServletRequest request) {
+        logger.debug("Received POST /api/products, forwarding to core-service");
+        // Тело продукта шлюзу не нужно - пересылаем байты как есть
+        return coreServiceProxy.forward(HttpMethod.POST, "/products", request, balancer.nextCreateShard())
+                // Новый продукт не должен потеряться для чтений списка, присоединившихся к старому запросу
+                .doFinally(signal -> coreServiceProxy.forgetSharedReads());
+    }
+
+    // Create Batch - POST /api/products/batch -> core-service: POST /products/batch
+    @PostMapping("/products/batch")
+    public Mono<ResponseEntity<StreamingResponseBody>> createProducts(HttpServletRequest request) {
+        logger.debug("Received POST /api/products/batch, forwarding to core-service");
+        return coreServiceProxy.forward(HttpMethod.POST, "/products/batch", request, balancer.nextCreateShard())
+                .doFinally(signal -> coreServiceProxy.forgetSharedReads());
     }
 
     // Read All - GET /api/products -> core-service: GET /products
+    // Параметры (ids, after, limit) и Accept (JSON или NDJSON) уходят в core-service без изменений,
+    // а большой список потоком идет клиенту, не собираясь в памяти шлюза.
+    // Одновременные одинаковые запросы разделяют один ответ core-service (CoreServiceProxy.forwardShared).
+    // При синхронизированной реплике каталога ответ с той же семантикой строится из нее, без core-service.
+    // ETag списка в обоих случаях - позиция ленты изменений: If-None-Match уходит в core-service вместе
+    // с остальными заголовками, а реплика сравнивает его со своей позицией сама.
+    // Каталог из нескольких шардов собирается из ответов всех шардов (ShardedCatalogClient)
     @GetMapping("/products")
-    public Mono<ResponseEntity<Flux<Product>>> getAllProducts() {
-        System.out.println("Gateway: Received GET /api/products, forwarding to core-service...");
-        Flux<Product> productFlux = coreServiceClient.get() // Делаем GET запрос
-                .uri("/products")
-                .retrieve()
-                // Преобразуем ответ в Flux<Product> (поток продуктов)
-                .bodyToFlux(Product.class)
-                .doOnComplete(() -> System.out.println("Gateway: Forwarded GET All, received response stream from core-service."))
-                .onErrorResume(WebClientResponseException.class, ex -> {
-                    System.err.println("Gateway: Error forwarding GET All: " + ex.getStatusCode() + " " + ex.getResponseBodyAsString());
-                    return Flux.error(ex); // Просто пробрасываем ошибку дальше
-                });
-        // Возвращаем Flux внутри ResponseEntity. OK статус устанавливается по умолчанию.
-        // Мы оборачиваем Flux в Mono<ResponseEntity>, чтобы контролировать статус ответа
-        return Mono.just(ResponseEntity.ok(productFlux))
-                .onErrorResume(WebClientResponseException.class, ex ->
-                        Mono.just(ResponseEntity.status(ex.getStatusCode()).body(null)) // Возвращаем статус ошибки, если сам запрос к core-service провалился
-                );
+    public Mono<ResponseEntity<StreamingResponseBody>> getAllProducts(HttpServletRequest request) {
+        if (productReplica.isReady()) {
+            logger.debug("Received GET /api/products, serving from replica");
+            return Mono.just(listFromReplica(request));
+        }
+        if (shardedCatalog.isSharded()) {
+            logger.debug("Received GET /api/products, gathering from {} shards", balancer.shardCount());
+            boolean ndjson = request.getParameterValues("ids") == null && request.getParameter("limit") == null
+                    && acceptsNdjson(request);
+            return shardedCatalog.list(request, ndjson);
+        }
+        logger.debug("Received GET /api/products, forwarding to core-service");
+        return coreServiceProxy.forwardShared("/products", request);
     }
 
     // Read One - GET /api/products/{id} -> core-service: GET /products/{id}
+    // Единственное чтение, где шлюз разбирает ответ: продукт кладется в кэш.
+    // ETag - эпоха core-service и версия продукта, как у core-service; на совпавший If-None-Match
+    // Spring отвечает 304 без тела
     @GetMapping("/products/{id}")
     public Mono<ResponseEntity<Product>> getProductById(@PathVariable Long id) {
-        System.out.println("Gateway: Received GET /api/products/" + id + ", forwarding to core-service...");
-        return coreServiceClient.get()
-                .uri("/products/{id}", id) // Используем параметр {id}
-                .retrieve()
-                // Обработка случая 404 Not Found от core-service
-                .onStatus(HttpStatus.NOT_FOUND::equals, clientResponse -> Mono.empty()) // Если 404, возвращаем пустой Mono
-                .bodyToMono(Product.class)
-                .map(product -> {
-                    System.out.println("Gateway: Forwarded GET by ID, received response from core-service.");
-                    return ResponseEntity.ok(product);
-                })
+        if (productReplica.isReady()) {
+            logger.debug("Received GET /api/products/{}, serving from replica", id);
+            return Mono.just(productReplica.findById(id)
+                    .map(GatewayController::withETag)
+                    .orElseGet(() -> ResponseEntity.notFound().build()));
+        }
+        logger.debug("Received GET /api/products/{}", id);
+        // Сначала смотрим в кэш шлюза, в core-service идем только при промахе
+        return productCache.getOrLoad(id, () -> productByIdRequests.execute(id, () -> fetchProduct(id))
+                        .doOnNext(product -> logger.debug("Cache miss for product {}, received response from core-service", id)))
+                .map(GatewayController::withETag)
                 .defaultIfEmpty(ResponseEntity.notFound().build()) // Если Mono пустое (был 404), возвращаем 404
                 .onErrorResume(WebClientResponseException.class, ex -> {
-                    System.err.println("Gateway: Error forwarding GET by ID: " + ex.getStatusCode() + " " + ex.getResponseBodyAsString());
+                    logger.warn("Error forwarding GET by ID: {} {}", ex.getStatusCode(), ex.getResponseBodyAsString());
                     return Mono.just(ResponseEntity.status(ex.getStatusCode()).body(null)); // Возвращаем статус ошибки от core-service
                 });
     }
 
     // Update - PUT /api/products/{id} -> core-service: PUT /products/{id}
+    // If-Match пересылается как есть: сравнение версий и ответ 412 - на стороне core-service
     @PutMapping("/products/{id}")
-    public Mono<ResponseEntity<Product>> updateProduct(@PathVariable Long id, @RequestBody Product productDetails) {
-        System.out.println("Gateway: Received PUT /api/products/" + id + ", forwarding to core-service...");
-        return coreServiceClient.put()
-                .uri("/products/{id}", id)
-                .bodyValue(productDetails)
-                .retrieve()
-                .onStatus(HttpStatus.NOT_FOUND::equals, clientResponse -> Mono.empty())
-                .bodyToMono(Product.class)
-                .map(updatedProduct -> {
-                    System.out.println("Gateway: Forwarded PUT, received response from core-service.");
-                    return ResponseEntity.ok(updatedProduct);
-                })
-                .defaultIfEmpty(ResponseEntity.notFound().build())
+    public Mono<ResponseEntity<StreamingResponseBody>> updateProduct(@PathVariable Long id, HttpServletRequest request) {
+        logger.debug("Received PUT /api/products/{}, forwarding to core-service", id);
+        return coreServiceProxy.forward(HttpMethod.PUT, "/products/" + id, request, balancer.shardOf(id))
+                // Сбрасываем кэш до и после записи, чтобы параллельное чтение не вернуло в кэш старую версию
+                .doOnSubscribe(subscription -> invalidate(id))
+                .doFinally(signal -> invalidate(id));
+    }
+
+    // Delete - DELETE /api/products/{id} -> core-service: DELETE /products/{id}
+    @DeleteMapping("/products/{id}")
+    public Mono<ResponseEntity<StreamingResponseBody>> deleteProduct(@PathVariable Long id, HttpServletRequest request) {
+        logger.debug("Received DELETE /api/products/{}, forwarding to core-service", id);
+        return coreServiceProxy.forward(HttpMethod.DELETE, "/products/" + id, request, balancer.shardOf(id))
+                .doOnSubscribe(subscription -> invalidate(id))
+                .doFinally(signal -> invalidate(id));
+    }
+
+    // Delete Batch - DELETE /api/products/batch -> core-service: DELETE /products/batch
+    // Тело разбирается: по списку ID шлюз сбрасывает кэш, а каждый шард получает только свои ID
+    @DeleteMapping("/products/batch")
+    public Mono<ResponseEntity<List<Long>>> deleteProducts(@RequestBody List<Long> ids) {
+        logger.debug("Received DELETE /api/products/batch ({} items), forwarding to core-service", ids.size());
+        return shardedCatalog.deleteAll(ids)
+                .doOnSubscribe(subscription -> ids.forEach(this::invalidate))
+                .doFinally(signal -> ids.forEach(this::invalidate))
+                .map(ResponseEntity::ok)
                 .onErrorResume(WebClientResponseException.class, ex -> {
-                    System.err.println("Gateway: Error forwarding PUT: " + ex.getStatusCode() + " " + ex.getResponseBodyAsString());
+                    logger.warn("Error forwarding DELETE batch: {} {}", ex.getStatusCode(), ex.getResponseBodyAsString());
                     return Mono.just(ResponseEntity.status(ex.getStatusCode()).body(null));
                 });
     }
 
-    // Delete - DELETE /api/products/{id} -> core-service: DELETE /products/{id}
-    @DeleteMapping("/products/{id}")
-    public Mono<ResponseEntity<Object>> deleteProduct(@PathVariable Long id) {
-        System.out.println("Gateway: Received DELETE /api/products/" + id + ", forwarding to core-service...");
-        return coreServiceClient.delete()
-                .uri("/products/{id}", id)
+    // core-service перегружен: запрос отклонен лимитом, не дойдя до core-service. Клиенту - быстрый 503
+    @ExceptionHandler(UpstreamOverloadedException.class)
+    public ResponseEntity<Void> upstreamOverloaded(UpstreamOverloadedException ex) {
+        logger.debug(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+    // core-service не ответил за таймаут маршрута
+    @ExceptionHandler(TimeoutException.class)
+    public ResponseEntity<Void> upstreamTimeout(TimeoutException ex) {
+        logger.warn("core-service did not respond in time: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+    }
+
+    // Запрос одного продукта в core-service; пустой Mono, если core-service ответил 404.
+    // В режиме пакетирования запрос объединяется с соседними в один GET /products?ids=...
+    private Mono<Product> fetchProduct(Long id) {
+        if (productBatchLoader.isEnabled()) {
+            return productBatchLoader.load(id);
+        }
+        return coreServiceClient.get()
+                .uri("/products/{id}", id) // Используем параметр {id}
+                .attribute(CoreServiceBalancer.SHARD_ATTRIBUTE, balancer.shardOf(id))
                 .retrieve()
-                .onStatus(HttpStatus.NOT_FOUND::equals, clientResponse -> Mono.empty())
-                .toBodilessEntity() // Нам не нужно тело ответа, только статус
-                .map(responseEntity -> {
-                    // Core-service возвращает 204 No Content при успехе
-                    System.out.println("Gateway: Forwarded DELETE, received response from core-service (Status: " + responseEntity.getStatusCode() + ").");
-                    return ResponseEntity.status(responseEntity.getStatusCode()).build(); // Используем статус от core-service (должен быть 204)
-                })
-                .defaultIfEmpty(ResponseEntity.notFound().build()) // Если был 404 от core-service
-                .onErrorResume(WebClientResponseException.class, ex -> {
-                    System.err.println("Gateway: Error forwarding DELETE: " + ex.getStatusCode() + " " + ex.getResponseBodyAsString());
-                    // Если core-service вернул другую ошибку (не 404, которую мы обработали выше)
-                    return Mono.just(ResponseEntity.status(ex.getStatusCode()).build());
+                // Обработка случая 404 Not Found от core-service
+                .onStatus(HttpStatus.NOT_FOUND::equals, clientResponse -> Mono.empty()) // Если 404, возвращаем пустой Mono
+                .toEntity(Product.class)
+                .mapNotNull(entity -> {
+                    Product product = entity.getBody();
+                    if (product != null) {
+                        product.setEpoch(entity.getHeaders().getFirst(Product.EPOCH_HEADER));
+                    }
+                    return product;
                 });
     }
+
+    // Сброс всего, что шлюз помнит о продукте: запись в кэше и запросы чтения в полете
+    private void invalidate(Long id) {
+        productCache.invalidate(id);
+        productByIdRequests.forget(id);
+        coreServiceProxy.forgetSharedReads();
+    }
+
+    // Без эпохи (core-service ее не прислал) ETag не ставим: одна версия совпала бы с версией другого запуска
+    private static ResponseEntity<Product> withETag(Product product) {
+        if (product.getEpoch() == null) {
+            return ResponseEntity.ok(product);
+        }
+        return ResponseEntity.ok().eTag("\"" + product.getEpoch() + "-" + product.getVersion() + "\"").body(product);
+    }
+
+    // --- Чтение из реплики: те же параметры и ответы, что у GET /products в core-service ---
+
+    private ResponseEntity<StreamingResponseBody> listFromReplica(HttpServletRequest request) {
+        // Позиция берется до обхода реплики, формат ETag - как у core-service
+        boolean ndjson = request.getParameterValues("ids") == null && request.getParameter("limit") == null
+                && acceptsNdjson(request);
+        String eTag = "\"" + productReplica.changePosition() + (ndjson ? "-ndjson" : "") + "\"";
+        if (new ServletWebRequest(request).checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        try {
+            String[] ids = request.getParameterValues("ids");
+            if (ids != null) {
+                List<Long> parsed = ProductListWriter.parseIds(ids);
+                if (parsed.size() > ProductListWriter.MAX_BATCH_SIZE) {
+                    return ResponseEntity.badRequest().build();
+                }
+                List<Product> found = productReplica.findAllById(parsed);
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(eTag).body(out -> productListWriter.write(out, found.stream(), false));
+            }
+            String afterParam = request.getParameter("after");
+            Long after = afterParam == null || afterParam.isEmpty() ? null : Long.valueOf(afterParam);
+            String limitParam = request.getParameter("limit");
+            if (limitParam != null) {
+                int limit = Integer.parseInt(limitParam);
+                if (limit <= 0) {
+                    return ResponseEntity.badRequest().build();
+                }
+                int pageSize = Math.min(limit, ProductListWriter.MAX_PAGE_SIZE);
+                List<Product> page = new ArrayList<>(Math.min(pageSize, 1024));
+                for (Product product : productReplica.findAfter(after)) {
+                    if (page.size() >= pageSize) {
+                        break;
+                    }
+                    page.add(product);
+                }
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(eTag);
+                if (page.size() == pageSize) {
+                    response.header("X-Next-Cursor", String.valueOf(page.get(page.size() - 1).getId()));
+                }
+                return response.body(out -> productListWriter.write(out, page.stream(), false));
+            }
+            Collection<Product> products = productReplica.findAfter(after);
+            return ResponseEntity.ok()
+                    .contentType(ndjson ? ProductListWriter.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                    .eTag(eTag)
+                    .body(out -> productListWriter.write(out, products.stream(), ndjson));
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private static boolean acceptsNdjson(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return accept != null && MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(type -> type.isCompatibleWith(ProductListWriter.APPLICATION_NDJSON) && !type.isWildcardType());
+    }
 }
@@ -1,5 +1,6 @@
 package com.example.api_gateway.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -9,7 +10,21 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 public class Product {
+
+    // Заголовок ответов core-service с эпохой его ленты изменений
+    public static final String EPOCH_HEADER = "X-Change-Epoch";
+
     private Long id;
     private String name;
     private double price;
+    // Версия продукта в core-service, меняется при каждом обновлении
+    private long version;
+    // Эпоха core-service, из которого прочитан продукт (EPOCH_HEADER); вместе с версией
+    // дает ETag продукта в формате core-service. Клиентам не отдается
+    @JsonIgnore
+    private String epoch;
+
+    public Product(Long id, String name, double price, long version) {
+        this(id, name, price, version, null);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package com.example.api_gateway.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Component // Списки продуктов в ответах шлюза: формат и ограничения - как у GET /products в core-service
+public class ProductListWriter {
+
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    // Те же ограничения, что у core-service
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_BATCH_SIZE = 10_000;
+    private static final int STREAM_CHUNK_SIZE = 256;
+
+    private final ObjectWriter productWriter;
+
+    public ProductListWriter(ObjectMapper objectMapper) {
+        this.productWriter = objectMapper.writerFor(Product.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // Пишет продукты JSON-массивом или NDJSON, сбрасывая ответ порциями, как core-service.
+    // Поток продуктов закрывается в конце: если он читает из core-service, закрытие отменяет подписку,
+    // даже когда клиент ушел раньше
+    public void write(OutputStream out, Stream<Product> products, boolean ndjson) throws IOException {
+        try (products; JsonGenerator generator = productWriter.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            if (!ndjson) {
+                generator.writeStartArray();
+            }
+            int written = 0;
+            Iterator<Product> iterator = products.iterator();
+            while (iterator.hasNext()) {
+                productWriter.writeValue(generator, iterator.next());
+                if (ndjson) {
+                    generator.writeRaw('\n');
+                }
+                if (++written % STREAM_CHUNK_SIZE == 0) {
+                    generator.flush();
+                }
+            }
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        }
+    }
+
+    // ?ids=1,2,3 и ?ids=1&ids=2 - как @RequestParam List<Long> в core-service
+    public static List<Long> parseIds(String[] values) {
+        List<Long> ids = new ArrayList<>();
+        for (String value : values) {
+            for (String id : value.split(",")) {
+                if (!id.isBlank()) {
+                    ids.add(Long.valueOf(id.trim()));
+                }
+            }
+        }
+        return ids;
+    }
+}
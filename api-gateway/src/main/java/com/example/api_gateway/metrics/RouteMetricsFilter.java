@@ -0,0 +1,124 @@
+package com.example.api_gateway.metrics;
+
+import com.example.common.tracing.RequestIds;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Метрики маршрутов шлюза и идентификатор запроса.
+// Общее время маршрута уже считает Spring (http.server.requests{uri}); здесь оно делится на две части:
+// gateway.route.upstream - ожидание core-service, gateway.route.overhead - все остальное
+// (Tomcat, контроллер, кэш, кодирование и отправка ответа клиенту). Теги: method и route (шаблон пути).
+// X-Request-Id клиента (или новый) попадает в MDC, в ответ и в запросы к core-service
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RouteMetricsFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public RouteMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("gateway.requests.in_flight", inFlight, AtomicInteger::get)
+                .description("Gateway requests being processed, including streaming responses")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        String requestId = RequestIds.accept(request.getHeader(RequestIds.HEADER));
+        UpstreamTiming timing = new UpstreamTiming();
+        request.setAttribute(UpstreamTiming.REQUEST_ID_ATTRIBUTE, requestId);
+        request.setAttribute(UpstreamTiming.ATTRIBUTE, timing);
+        response.setHeader(RequestIds.HEADER, requestId);
+        MDC.put(RequestIds.MDC_KEY, requestId);
+        inFlight.incrementAndGet();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            MDC.remove(RequestIds.MDC_KEY);
+            // Ответ из Mono и потоковая пересылка завершаются после выхода из фильтра
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new CompletionListener(request, start, timing));
+            } else {
+                complete(request, start, timing);
+            }
+        }
+    }
+
+    private void complete(HttpServletRequest request, long start, UpstreamTiming timing) {
+        inFlight.decrementAndGet();
+        long total = System.nanoTime() - start;
+        long upstream = Math.min(timing.nanos(), total);
+        String method = request.getMethod();
+        String route = route(request);
+        if (upstream > 0) {
+            timer("gateway.route.upstream", method, route).record(upstream, TimeUnit.NANOSECONDS);
+        }
+        timer("gateway.route.overhead", method, route).record(total - upstream, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String name, String method, String route) {
+        // Повторная регистрация возвращает уже созданный таймер
+        return Timer.builder(name)
+                .tag("method", method)
+                .tag("route", route)
+                .register(meterRegistry);
+    }
+
+    // Шаблон пути (/api/products/{id}), а не сам путь: иначе на каждый ID получится свой таймер
+    private static String route(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern.toString() : "UNKNOWN";
+    }
+
+    private final class CompletionListener implements AsyncListener {
+
+        private final HttpServletRequest request;
+        private final long start;
+        private final UpstreamTiming timing;
+
+        CompletionListener(HttpServletRequest request, long start, UpstreamTiming timing) {
+            this.request = request;
+            this.start = start;
+            this.timing = timing;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            complete(request, start, timing);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        // Новый цикл асинхронной обработки (Mono, а затем StreamingResponseBody): слушателя нужно добавить заново
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.api_gateway.metrics;
+
+import com.example.common.tracing.RequestIds;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Время, которое входящий запрос шлюза провел в ожидании core-service (до заголовков ответа),
+// суммарно по всем его запросам к core-service. Создается RouteMetricsFilter, пополняется CoreServiceBalancer;
+// разница с общим временем запроса - собственные накладные расходы шлюза
+public final class UpstreamTiming {
+
+    static final String ATTRIBUTE = UpstreamTiming.class.getName();
+    static final String REQUEST_ID_ATTRIBUTE = UpstreamTiming.class.getName() + ".requestId";
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    public void add(long elapsedNanos) {
+        nanos.addAndGet(elapsedNanos);
+    }
+
+    long nanos() {
+        return nanos.get();
+    }
+
+    // Таймер входящего запроса, от имени которого выполняется запрос к core-service (или null)
+    public static UpstreamTiming of(ClientRequest request) {
+        return (UpstreamTiming) request.attribute(ATTRIBUTE).orElse(null);
+    }
+
+    // Для WebClient.Builder.defaultRequest: вызывается при сборке запроса, то есть еще в потоке контроллера,
+    // где доступен входящий запрос. Передает в core-service X-Request-Id и привязывает к запросу таймер.
+    // Запросы, собранные вне потока контроллера (пакетная загрузка, проверки здоровья), остаются без привязки
+    public static void propagate(WebClient.RequestHeadersSpec<?> spec) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return;
+        }
+        Object requestId = attributes.getAttribute(REQUEST_ID_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (requestId != null) {
+            // set, а не add: прокси уже скопировал заголовки клиента, среди них может быть и X-Request-Id
+            spec.headers(headers -> headers.set(RequestIds.HEADER, (String) requestId));
+        }
+        Object timing = attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (timing != null) {
+            spec.attribute(ATTRIBUTE, timing);
+        }
+    }
+}
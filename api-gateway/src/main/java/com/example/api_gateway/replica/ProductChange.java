@@ -0,0 +1,16 @@
+package com.example.api_gateway.replica;
+
+import com.example.api_gateway.dto.Product;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// Запись ленты изменений core-service (GET /products/changes), должна совпадать с ProductChange в core-service
+@JsonIgnoreProperties(ignoreUnknown = true)
+record ProductChange(long seq, Type type, Long id, Product product) {
+
+    enum Type {
+        UPSERT,
+        DELETE,
+        HEARTBEAT,
+        RESET
+    }
+}
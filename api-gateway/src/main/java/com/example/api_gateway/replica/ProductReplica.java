@@ -0,0 +1,243 @@
+package com.example.api_gateway.replica;
+
+import com.example.api_gateway.client.balancer.CoreServiceBalancer;
+import com.example.api_gateway.dto.Product;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+// Полная копия каталога в памяти шлюза. Строится из снимка (GET /products в NDJSON, в заголовках -
+// номер ленты изменений на момент снимка) и дальше поддерживается лентой GET /products/changes с этого номера.
+// После обрыва лента продолжается с последнего полученного номера; если core-service ответил 410
+// (перезапуск или подписчик слишком отстал), снимок загружается заново.
+// Реплика отстает от core-service на время доставки изменения: запись через шлюз не сразу видна в чтении.
+// Лента изменений у каждого шарда (и у каждого экземпляра) своя, поэтому реплика работает только
+// с каталогом из одного шарда с одним экземпляром
+@Component
+public class ProductReplica {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductReplica.class);
+
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final String SEQUENCE_HEADER = "X-Change-Sequence";
+
+    private final WebClient coreServiceClient;
+    private final boolean enabled;
+    private final long maxStalenessNanos;
+    private final Duration retryMaxBackoff;
+
+    // Снимок заменяется целиком, пока идет загрузка нового - читатели видят прежний
+    private volatile ConcurrentSkipListMap<Long, Product> products = new ConcurrentSkipListMap<>();
+    private volatile boolean loaded;
+    // Время последней записи ленты (включая heartbeat)
+    private volatile long lastContactNanos;
+    // Позиция в ленте; меняется только цепочкой синхронизации, подписки которой идут строго друг за другом.
+    // Эпоха и номер лежат в одном неизменяемом объекте, чтобы читатель (ETag списка) не увидел их вразнобой
+    private volatile Position position;
+    private volatile boolean snapshotNeeded = true;
+    private Disposable sync;
+
+    public ProductReplica(WebClient coreServiceClient, CoreServiceBalancer balancer,
+                          @Value("${gateway.replica.enabled:false}") boolean enabled,
+                          @Value("${gateway.replica.max-staleness:15s}") Duration maxStaleness,
+                          @Value("${gateway.replica.retry-max-backoff:10s}") Duration retryMaxBackoff,
+                          MeterRegistry meterRegistry) {
+        this.coreServiceClient = coreServiceClient;
+        if (enabled && balancer.shardCount() > 1) {
+            logger.warn("Replica supports a single core-service shard, disabled for {} shards", balancer.shardCount());
+            enabled = false;
+        } else if (enabled && balancer.hasReplicatedInstances()) {
+            // Снимок и лента могли бы прийти с разных экземпляров: у каждого свой epoch и своя нумерация,
+            // и реплика бесконечно перезагружала бы снимок по 410
+            logger.warn("Replica follows a single core-service instance, disabled for a shard with several instances");
+            enabled = false;
+        }
+        this.enabled = enabled;
+        this.maxStalenessNanos = maxStaleness.toNanos();
+        this.retryMaxBackoff = retryMaxBackoff;
+        if (enabled) {
+            Gauge.builder("gateway.replica.ready", this, replica -> replica.isReady() ? 1 : 0)
+                    .description("1 if reads are served from the replica")
+                    .register(meterRegistry);
+            Gauge.builder("gateway.replica.sequence", this, ProductReplica::lastSequence)
+                    .description("Last applied change feed sequence")
+                    .register(meterRegistry);
+            Gauge.builder("gateway.replica.staleness", this, ProductReplica::stalenessSeconds)
+                    .description("Seconds since the last change or heartbeat from core-service")
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+        }
+    }
+
+    // Чтения можно отдавать из реплики: снимок загружен и лента недавно подавала признаки жизни
+    public boolean isReady() {
+        return loaded && System.nanoTime() - lastContactNanos < maxStalenessNanos;
+    }
+
+    public Optional<Product> findById(Long id) {
+        return Optional.ofNullable(products.get(id));
+    }
+
+    // Найденные продукты в порядке запрошенных ID, отсутствующие пропускаются
+    public List<Product> findAllById(Collection<Long> ids) {
+        ConcurrentSkipListMap<Long, Product> current = products;
+        List<Product> found = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Product product = current.get(id);
+            if (product != null) {
+                found.add(product);
+            }
+        }
+        return found;
+    }
+
+    // Состояние каталога, которое отражает реплика, в виде "<эпоха>-<номер>" - как в ETag списка core-service.
+    // Читать до обхода: все, что изменится во время выдачи, сдвинет номер
+    public String changePosition() {
+        Position current = position;
+        return current.epoch() + "-" + current.sequence();
+    }
+
+    // Продукты с ID больше after (null - все) по возрастанию ID; представление, без копирования
+    public Collection<Product> findAfter(Long after) {
+        ConcurrentSkipListMap<Long, Product> current = products;
+        ConcurrentNavigableMap<Long, Product> tail = after == null ? current : current.tailMap(after, false);
+        return tail.values();
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        sync = Mono.defer(this::syncOnce)
+                .doOnError(error -> logger.warn("Replica sync with core-service failed: {}", error.toString()))
+                // transientErrors: после успешной синхронизации пауза между попытками снова начинается с минимальной
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(200)).maxBackoff(retryMaxBackoff).transientErrors(true))
+                // Поток ленты штатно заканчивается через несколько секунд - переподключаемся сразу
+                .repeat()
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (sync != null) {
+            sync.dispose();
+        }
+    }
+
+    private Mono<Void> syncOnce() {
+        return (snapshotNeeded ? loadSnapshot() : Mono.<Void>empty()).then(Mono.defer(this::follow));
+    }
+
+    private Mono<Void> loadSnapshot() {
+        long started = System.nanoTime();
+        return coreServiceClient.get()
+                .uri("/products")
+                .accept(APPLICATION_NDJSON)
+                .retrieve()
+                .toEntityFlux(Product.class)
+                .flatMap(entity -> {
+                    HttpHeaders headers = entity.getHeaders();
+                    String snapshotEpoch = headers.getFirst(Product.EPOCH_HEADER);
+                    String snapshotSequence = headers.getFirst(SEQUENCE_HEADER);
+                    if (snapshotEpoch == null || snapshotSequence == null) {
+                        return Mono.error(new IllegalStateException("core-service did not report the change feed position"));
+                    }
+                    ConcurrentSkipListMap<Long, Product> snapshot = new ConcurrentSkipListMap<>();
+                    return entity.getBody()
+                            .doOnNext(product -> {
+                                product.setEpoch(snapshotEpoch);
+                                snapshot.put(product.getId(), product);
+                            })
+                            .then(Mono.fromRunnable(() -> {
+                                products = snapshot;
+                                position = new Position(snapshotEpoch, Long.parseLong(snapshotSequence));
+                                snapshotNeeded = false;
+                                loaded = true;
+                                lastContactNanos = System.nanoTime();
+                                logger.info("Replica loaded {} products at change {} in {} ms", snapshot.size(), position.sequence(),
+                                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+                            }));
+                });
+    }
+
+    private Mono<Void> follow() {
+        Position from = position;
+        return coreServiceClient.get()
+                .uri(uri -> uri.path("/products/changes")
+                        .queryParam("after", from.sequence())
+                        .queryParam("epoch", from.epoch())
+                        .build())
+                .accept(APPLICATION_NDJSON)
+                .exchangeToFlux(response -> {
+                    if (response.statusCode().value() == HttpStatus.GONE.value()) {
+                        logger.info("Change feed cannot resume after {}, reloading replica snapshot", from.sequence());
+                        snapshotNeeded = true;
+                        return response.releaseBody().thenMany(Flux.<ProductChange>empty());
+                    }
+                    if (response.statusCode().isError()) {
+                        return response.<ProductChange>createError().flux();
+                    }
+                    return response.bodyToFlux(ProductChange.class);
+                })
+                .doOnNext(this::apply)
+                .then();
+    }
+
+    private void apply(ProductChange change) {
+        switch (change.type()) {
+            case UPSERT -> {
+                change.product().setEpoch(position.epoch());
+                products.put(change.id(), change.product());
+            }
+            case DELETE -> products.remove(change.id());
+            case HEARTBEAT -> {
+            }
+            case RESET -> {
+                logger.info("Replica fell behind the change feed at {}, reloading snapshot", position.sequence());
+                snapshotNeeded = true;
+                return;
+            }
+        }
+        Position current = position;
+        if (change.seq() > current.sequence()) {
+            position = new Position(current.epoch(), change.seq());
+        }
+        lastContactNanos = System.nanoTime();
+    }
+
+    private record Position(String epoch, long sequence) {
+    }
+
+    private double lastSequence() {
+        Position current = position;
+        return current == null ? 0 : current.sequence();
+    }
+
+    private double stalenessSeconds() {
+        return loaded ? (System.nanoTime() - lastContactNanos) / 1e9 : Double.NaN;
+    }
+}
@@ -1,6 +1,6 @@
-package src.test.java.com.example.api_gateway;
+package com.example.api_gateway;
 
-import org.testng.annotations.Test;
+import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
 @SpringBootTest
@@ -0,0 +1,80 @@
+package com.example.api_gateway.cache;
+
+import com.example.api_gateway.dto.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProductCacheTests {
+
+	@Test
+	void loadsOnMissAndServesHitsFromCache() {
+		ProductCache cache = cache();
+		AtomicInteger loads = new AtomicInteger();
+
+		for (int i = 0; i < 3; i++) {
+			StepVerifier.create(cache.getOrLoad(1L, () -> Mono.fromSupplier(() -> product(1L, loads.incrementAndGet()))))
+					.expectNext(product(1L, 1))
+					.verifyComplete();
+		}
+		assertEquals(1, loads.get());
+
+		// Не найденный продукт не кэшируется
+		StepVerifier.create(cache.getOrLoad(2L, Mono::empty)).verifyComplete();
+		StepVerifier.create(cache.getOrLoad(2L, () -> Mono.just(product(2L, 1))))
+				.expectNext(product(2L, 1))
+				.verifyComplete();
+	}
+
+	@Test
+	void loadRacingWithInvalidationIsNotCached() {
+		ProductCache cache = cache();
+		Sinks.One<Product> upstream = Sinks.one();
+
+		StepVerifier.create(cache.getOrLoad(1L, upstream::asMono))
+				.then(() -> {
+					cache.invalidate(1L);
+					upstream.tryEmitValue(product(1L, 1));
+				})
+				.expectNext(product(1L, 1))
+				.verifyComplete();
+
+		// Ответ, начатый до записи, мог устареть: следующее чтение идет в core-service
+		StepVerifier.create(cache.getOrLoad(1L, () -> Mono.just(product(1L, 2))))
+				.expectNext(product(1L, 2))
+				.verifyComplete();
+	}
+
+	@Test
+	void invalidationOfOneProductDoesNotBlockCachingOthers() {
+		ProductCache cache = cache();
+		Sinks.One<Product> upstream = Sinks.one();
+
+		StepVerifier.create(cache.getOrLoad(1L, upstream::asMono))
+				.then(() -> {
+					cache.invalidate(2L);
+					upstream.tryEmitValue(product(1L, 1));
+				})
+				.expectNext(product(1L, 1))
+				.verifyComplete();
+
+		StepVerifier.create(cache.getOrLoad(1L, () -> Mono.just(product(1L, 2))))
+				.expectNext(product(1L, 1))
+				.verifyComplete();
+	}
+
+	private static ProductCache cache() {
+		return new ProductCache(true, 100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+	}
+
+	private static Product product(Long id, long version) {
+		return new Product(id, "Товар " + id, 10.0, version);
+	}
+}
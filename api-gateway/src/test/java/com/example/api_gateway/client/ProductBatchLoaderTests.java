@@ -0,0 +1,111 @@
+package com.example.api_gateway.client;
+
+import com.example.api_gateway.client.balancer.CoreServiceBalancer;
+import com.example.api_gateway.dto.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProductBatchLoaderTests {
+
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+
+	@Test
+	void requestsWithinWindowGoOutAsOneBatch() {
+		ProductBatchLoader loader = loader(respondWith(1L, 3L), Duration.ofMillis(50), 100);
+
+		StepVerifier.create(Mono.zip(loader.load(1L), loader.load(2L).defaultIfEmpty(missing()), loader.load(1L), loader.load(3L)))
+				.assertNext(results -> {
+					assertEquals(1L, results.getT1().getId());
+					assertEquals(missing(), results.getT2()); // 2 нет в core-service - пустой Mono
+					assertEquals(1L, results.getT3().getId());
+					assertEquals(3L, results.getT4().getId());
+				})
+				.verifyComplete();
+		// Повторный ID в пакете запрашивается один раз
+		assertEquals(List.of("1,2,3"), requests);
+	}
+
+	@Test
+	void fullBatchIsSentWithoutWaitingForWindow() {
+		ProductBatchLoader loader = loader(respondWith(1L, 2L, 3L, 4L), Duration.ofHours(1), 3);
+
+		StepVerifier.create(Mono.zip(loader.load(1L), loader.load(2L), loader.load(3L)))
+				.expectNextCount(1)
+				.verifyComplete();
+		assertEquals(List.of("1,2,3"), requests);
+		// Следующий запрос открывает новый пакет и ждет окна
+		StepVerifier.create(loader.load(4L))
+				.expectSubscription()
+				.expectNoEvent(Duration.ofMillis(100))
+				.thenCancel()
+				.verify();
+		assertEquals(1, requests.size());
+	}
+
+	@Test
+	void batchFailureReachesEveryWaiter() {
+		ExchangeFunction failing = request -> {
+			requests.add(request.url().getQuery());
+			return Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build());
+		};
+		ProductBatchLoader loader = loader(failing, Duration.ofMillis(20), 100);
+
+		Mono<Product> first = loader.load(1L);
+		Mono<Product> second = loader.load(2L);
+		StepVerifier.create(Mono.zip(first.onErrorResume(WebClientResponseException.class, e -> Mono.just(missing())),
+						second.onErrorResume(WebClientResponseException.class, e -> Mono.just(missing()))))
+				.assertNext(results -> {
+					assertEquals(missing(), results.getT1());
+					assertEquals(missing(), results.getT2());
+				})
+				.verifyComplete();
+		assertEquals(1, requests.size());
+	}
+
+	// Отвечает как core-service на GET /products?ids=...: только существующие из запрошенных
+	private ExchangeFunction respondWith(Long... existing) {
+		List<Long> known = List.of(existing);
+		return request -> {
+			String ids = request.url().getQuery().substring("ids=".length());
+			requests.add(ids);
+			String body = List.of(ids.split(",")).stream()
+					.map(Long::valueOf)
+					.filter(known::contains)
+					.map(id -> "{\"id\":" + id + ",\"name\":\"p" + id + "\",\"price\":1.0,\"version\":1}")
+					.collect(Collectors.joining(",", "[", "]"));
+			return Mono.just(ClientResponse.create(HttpStatus.OK)
+					.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+					.body(body)
+					.build());
+		};
+	}
+
+	private static ProductBatchLoader loader(ExchangeFunction exchange, Duration window, int maxBatchSize) {
+		WebClient client = WebClient.builder().baseUrl(CoreServiceBalancer.BASE_URL).exchangeFunction(exchange).build();
+		CoreServiceBalancer balancer = new CoreServiceBalancer(new String[]{"http://localhost:8081"}, "", 1024, false,
+				"power_of_two_choices", 3, Duration.ofMinutes(1), Duration.ofMinutes(5), false, "/actuator/health",
+				Duration.ofSeconds(5), Duration.ofSeconds(1), new ReactorClientHttpConnector(), new SimpleMeterRegistry());
+		return new ProductBatchLoader(client, balancer, true, window, maxBatchSize);
+	}
+
+	private static Product missing() {
+		return new Product(-1L, "missing", 0, 0);
+	}
+}
@@ -0,0 +1,68 @@
+package com.example.api_gateway.client;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestCoalescerTests {
+
+	@Test
+	void concurrentCallsShareOneUpstreamRequest() {
+		RequestCoalescer<Long, String> coalescer = new RequestCoalescer<>(true);
+		AtomicInteger upstreamCalls = new AtomicInteger();
+		Sinks.One<String> upstream = Sinks.one();
+
+		Mono<String> first = coalescer.execute(1L, () -> {
+			upstreamCalls.incrementAndGet();
+			return upstream.asMono();
+		});
+		Mono<String> second = coalescer.execute(1L, () -> {
+			upstreamCalls.incrementAndGet();
+			return Mono.just("other");
+		});
+
+		StepVerifier.create(Mono.zip(first, second))
+				.then(() -> upstream.tryEmitValue("product"))
+				.assertNext(pair -> {
+					assertEquals("product", pair.getT1());
+					assertEquals("product", pair.getT2());
+				})
+				.verifyComplete();
+		assertEquals(1, upstreamCalls.get());
+	}
+
+	@Test
+	void finishedRequestIsNotReused() {
+		RequestCoalescer<Long, Integer> coalescer = new RequestCoalescer<>(true);
+		AtomicInteger upstreamCalls = new AtomicInteger();
+
+		StepVerifier.create(coalescer.execute(1L, () -> Mono.fromSupplier(upstreamCalls::incrementAndGet)))
+				.expectNext(1)
+				.verifyComplete();
+		StepVerifier.create(coalescer.execute(1L, () -> Mono.fromSupplier(upstreamCalls::incrementAndGet)))
+				.expectNext(2)
+				.verifyComplete();
+	}
+
+	@Test
+	void errorIsDeliveredToAllWaiters() {
+		RequestCoalescer<Long, String> coalescer = new RequestCoalescer<>(true);
+		Sinks.One<String> upstream = Sinks.one();
+
+		Mono<String> first = coalescer.execute(1L, upstream::asMono);
+		Mono<String> second = coalescer.execute(1L, upstream::asMono);
+
+		StepVerifier.create(Mono.zipDelayError(first.onErrorReturn("failed"), second.onErrorReturn("failed")))
+				.then(() -> upstream.tryEmitError(new IllegalStateException("core-service down")))
+				.assertNext(pair -> {
+					assertEquals("failed", pair.getT1());
+					assertEquals("failed", pair.getT2());
+				})
+				.verifyComplete();
+	}
+}
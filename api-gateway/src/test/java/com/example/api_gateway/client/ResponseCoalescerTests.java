@@ -0,0 +1,133 @@
+package com.example.api_gateway.client;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCoalescerTests {
+
+	@Test
+	void requestJoiningWithinWindowGetsWholeBody() {
+		ResponseCoalescer<String> coalescer = new ResponseCoalescer<>(true, 4, 8);
+		AtomicInteger upstreamCalls = new AtomicInteger();
+		Sinks.Many<DataBuffer> body = Sinks.many().unicast().onBackpressureBuffer();
+
+		ResponseEntity<Supplier<Stream<byte[]>>> first = coalescer.execute("list", () -> upstream(upstreamCalls, body.asFlux())).block();
+		Stream<byte[]> firstBody = first.getBody().get();
+		body.tryEmitNext(buffer("[1,"));
+		body.tryEmitNext(buffer("2,"));
+		ResponseEntity<Supplier<Stream<byte[]>>> second = coalescer.execute("list", () -> upstream(upstreamCalls, Flux.empty())).block();
+		body.tryEmitNext(buffer("3]"));
+		body.tryEmitComplete();
+
+		assertEquals(1, upstreamCalls.get());
+		assertEquals(HttpStatus.OK, second.getStatusCode());
+		assertEquals("\"v1\"", second.getHeaders().getETag());
+		assertEquals("[1,2,3]", read(firstBody));
+		// Второй участник начинает писать после конца ответа - тело целиком в replay
+		assertEquals("[1,2,3]", read(second.getBody().get()));
+	}
+
+	@Test
+	void requestAfterWindowStartsNewUpstreamCall() {
+		ResponseCoalescer<String> coalescer = new ResponseCoalescer<>(true, 2, 8);
+		AtomicInteger upstreamCalls = new AtomicInteger();
+		Sinks.Many<DataBuffer> body = Sinks.many().unicast().onBackpressureBuffer();
+
+		// Оба запроса пришли, пока core-service еще не ответил
+		Sinks.Empty<Void> headers = Sinks.empty();
+		CompletableFuture<ResponseEntity<Supplier<Stream<byte[]>>>> firstResponse = coalescer.execute("list",
+				() -> headers.asMono().then(upstream(upstreamCalls, body.asFlux()))).toFuture();
+		CompletableFuture<ResponseEntity<Supplier<Stream<byte[]>>>> lateResponse = coalescer.execute("list",
+				() -> upstream(upstreamCalls, Flux.just(buffer("ab"), buffer("c")))).toFuture();
+		headers.tryEmitEmpty();
+		ResponseEntity<Supplier<Stream<byte[]>>> first = firstResponse.join();
+		ResponseEntity<Supplier<Stream<byte[]>>> late = lateResponse.join();
+		Stream<byte[]> firstBody = first.getBody().get();
+		body.tryEmitNext(buffer("a"));
+		body.tryEmitNext(buffer("b"));
+		body.tryEmitNext(buffer("c"));
+		// Первые порции ответа уже вышли за окно - присоединиться нельзя, нужен новый запрос
+		ResponseEntity<Supplier<Stream<byte[]>>> second = coalescer.execute("list",
+				() -> upstream(upstreamCalls, Flux.just(buffer("abc")))).block();
+		body.tryEmitComplete();
+
+		assertEquals(2, upstreamCalls.get());
+		assertEquals("abc", read(firstBody));
+		assertEquals("abc", read(second.getBody().get()));
+		// Участник, получивший заголовки вовремя, но начавший писать после окна, читает свой запрос
+		assertEquals("abc", read(late.getBody().get()));
+		assertEquals(3, upstreamCalls.get());
+	}
+
+	@Test
+	void participantThatHasNotStartedWritingDoesNotHoldOthers() {
+		ResponseCoalescer<String> coalescer = new ResponseCoalescer<>(true, 64, 2);
+		AtomicInteger upstreamCalls = new AtomicInteger();
+		Flux<DataBuffer> body = Flux.range(0, 32).map(i -> buffer(String.valueOf(i % 10)));
+
+		Sinks.Empty<Void> headers = Sinks.empty();
+		CompletableFuture<ResponseEntity<Supplier<Stream<byte[]>>>> firstResponse = coalescer.execute("list",
+				() -> headers.asMono().then(upstream(upstreamCalls, body))).toFuture();
+		CompletableFuture<ResponseEntity<Supplier<Stream<byte[]>>>> waitingResponse = coalescer.execute("list",
+				() -> upstream(upstreamCalls, body)).toFuture();
+		headers.tryEmitEmpty();
+		ResponseEntity<Supplier<Stream<byte[]>>> first = firstResponse.join();
+		// Второй участник получил заголовки, но еще не пишет (ждет поток записи) - первый пишет без него
+		ResponseEntity<Supplier<Stream<byte[]>>> waiting = waitingResponse.join();
+
+		String expected = "01234567890123456789012345678901";
+		assertEquals(expected, read(first.getBody().get()));
+		assertEquals(expected, read(waiting.getBody().get()));
+		assertEquals(1, upstreamCalls.get());
+	}
+
+	@Test
+	void finishedResponseIsNotReusedAndAbandonedOneIsCancelled() {
+		ResponseCoalescer<String> coalescer = new ResponseCoalescer<>(true, 4, 8);
+		AtomicInteger upstreamCalls = new AtomicInteger();
+		assertEquals("x", read(coalescer.execute("list", () -> upstream(upstreamCalls, Flux.just(buffer("x")))).block().getBody().get()));
+		assertEquals("y", read(coalescer.execute("list", () -> upstream(upstreamCalls, Flux.just(buffer("y")))).block().getBody().get()));
+		assertEquals(2, upstreamCalls.get());
+
+		// Все участники закрыли тело, не дочитав: запрос к core-service отменяется
+		AtomicBoolean cancelled = new AtomicBoolean();
+		Flux<DataBuffer> endless = Flux.<DataBuffer>never().doOnCancel(() -> cancelled.set(true));
+		coalescer.execute("list", () -> upstream(upstreamCalls, endless)).block().getBody().get().close();
+		assertTrue(cancelled.get());
+		assertEquals("z", read(coalescer.execute("list", () -> upstream(upstreamCalls, Flux.just(buffer("z")))).block().getBody().get()));
+	}
+
+	private static Mono<ResponseEntity<Flux<DataBuffer>>> upstream(AtomicInteger calls, Flux<DataBuffer> body) {
+		return Mono.fromSupplier(() -> {
+			calls.incrementAndGet();
+			return ResponseEntity.ok().eTag("v" + calls.get()).body(body);
+		});
+	}
+
+	private static DataBuffer buffer(String text) {
+		return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(Stream<byte[]> stream) {
+		try (Stream<byte[]> body = stream) {
+			return body.map(bytes -> new String(bytes, StandardCharsets.UTF_8)).collect(Collectors.joining());
+		}
+	}
+}
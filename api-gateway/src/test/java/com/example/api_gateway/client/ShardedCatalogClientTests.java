@@ -0,0 +1,182 @@
+package com.example.api_gateway.client;
+
+import com.example.api_gateway.client.balancer.CoreServiceBalancer;
+import com.example.api_gateway.dto.Product;
+import com.example.api_gateway.dto.ProductListWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedCatalogClientTests {
+
+	// Блоки по 4 ID: шард 0 - 1-4, 9-12, 17-20; шард 1 - 5-8, 13-16
+	private static final long BLOCK_SIZE = 4;
+	private static final long PRODUCTS = 18;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final CoreServiceBalancer balancer = new CoreServiceBalancer(new String[0], "http://a:1;http://b:1", BLOCK_SIZE,
+			false, "power_of_two_choices", 3, Duration.ofMinutes(1), Duration.ofMinutes(5), false, "/actuator/health",
+			Duration.ofSeconds(5), Duration.ofSeconds(1), new ReactorClientHttpConnector(), new SimpleMeterRegistry());
+	// Номер ленты изменений каждого шарда - из него шард строит ETag списка
+	private final long[] sequences = {10, 20};
+	// Запросы к шардам: "<шард> <query> <If-None-Match>"
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+	private final ShardedCatalogClient client = new ShardedCatalogClient(
+			WebClient.builder().baseUrl(CoreServiceBalancer.BASE_URL).exchangeFunction(this::shard).build(),
+			balancer, new ProductListWriter(objectMapper));
+
+	@Test
+	void mergesShardsInIdOrder() throws IOException {
+		List<Long> all = LongStream.rangeClosed(1, PRODUCTS).boxed().toList();
+		assertEquals(all, ids(body(client.list(get(), false).block())));
+		assertEquals(all, ids(body(client.list(get(), true).block())));
+		assertEquals(List.of(10L, 11L, 12L, 13L, 14L, 15L, 16L, 17L, 18L), ids(body(client.list(get("after", "9"), false).block())));
+
+		// ?ids= - в порядке запроса, отсутствующие пропускаются
+		assertEquals(List.of(13L, 2L, 6L), ids(body(client.list(get("ids", "13,2,99,6"), false).block())));
+	}
+
+	@Test
+	void pagesWalkAcrossShardsByCursor() throws IOException {
+		List<Long> walked = new ArrayList<>();
+		String cursor = null;
+		do {
+			MockHttpServletRequest request = get("limit", "5");
+			if (cursor != null) {
+				request.addParameter("after", cursor);
+			}
+			ResponseEntity<StreamingResponseBody> response = client.list(request, false).block();
+			List<Long> page = ids(body(response));
+			walked.addAll(page);
+			cursor = response.getHeaders().getFirst("X-Next-Cursor");
+			// Курсор есть только у полной страницы и указывает на ее последний элемент
+			if (cursor != null) {
+				assertEquals(5, page.size());
+				assertEquals(page.get(page.size() - 1), Long.valueOf(cursor));
+			}
+		} while (cursor != null);
+
+		assertEquals(LongStream.rangeClosed(1, PRODUCTS).boxed().toList(), walked);
+	}
+
+	@Test
+	void eTagJoinsShardTagsAndUnchangedCatalogIsNotModified() throws IOException {
+		ResponseEntity<StreamingResponseBody> first = client.list(get(), false).block();
+		assertEquals("\"10+20\"", first.getHeaders().getETag());
+
+		// If-None-Match раскладывается по шардам; ни один не изменился - 304 без тела
+		requests.clear();
+		ResponseEntity<StreamingResponseBody> notModified = client.list(withIfNoneMatch(get(), "\"10+20\""), false).block();
+		assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+		assertEquals("\"10+20\"", notModified.getHeaders().getETag());
+		assertNull(notModified.getBody());
+		assertEquals(List.of("0 null \"10\"", "1 null \"20\""), requests);
+
+		// Изменился шард 1: шард 0 ответил 304, его список перечитывается без условия
+		sequences[1]++;
+		requests.clear();
+		ResponseEntity<StreamingResponseBody> changed = client.list(withIfNoneMatch(get(), "\"10+20\""), false).block();
+		assertEquals(HttpStatus.OK, changed.getStatusCode());
+		assertEquals("\"10+21\"", changed.getHeaders().getETag());
+		assertEquals(LongStream.rangeClosed(1, PRODUCTS).boxed().toList(), ids(body(changed)));
+		assertEquals(List.of("0 null \"10\"", "1 null \"20\"", "0 null null"), requests);
+
+		// Чужой ETag (другое число шардов) шардам не передается
+		requests.clear();
+		assertEquals(HttpStatus.OK, client.list(withIfNoneMatch(get(), "\"10\""), false).block().getStatusCode());
+		assertTrue(requests.stream().allMatch(request -> request.endsWith(" null")), requests.toString());
+	}
+
+	// Шард core-service: свои продукты по возрастанию ID после after, не больше limit,
+	// ETag "<номер ленты>" и 304 на совпадающий If-None-Match
+	private Mono<ClientResponse> shard(ClientRequest request) {
+		int shard = (Integer) request.attribute(CoreServiceBalancer.SHARD_ATTRIBUTE).orElseThrow();
+		Map<String, List<String>> params = UriComponentsBuilder.fromUri(request.url()).build().getQueryParams();
+		String ifNoneMatch = request.headers().getFirst(HttpHeaders.IF_NONE_MATCH);
+		requests.add(shard + " " + request.url().getQuery() + " " + ifNoneMatch);
+		String eTag = "\"" + sequences[shard] + "\"";
+		if (eTag.equals(ifNoneMatch)) {
+			return Mono.just(ClientResponse.create(HttpStatus.NOT_MODIFIED).header(HttpHeaders.ETAG, eTag).build());
+		}
+		List<Long> own = LongStream.rangeClosed(1, PRODUCTS).filter(id -> balancer.shardOf(id) == shard).boxed().toList();
+		if (params.containsKey("ids")) {
+			List<Long> requested = List.of(UriUtils.decode(params.get("ids").get(0), StandardCharsets.UTF_8).split(",")).stream().map(Long::valueOf).toList();
+			own = requested.stream().filter(own::contains).toList();
+		} else {
+			long after = params.containsKey("after") ? Long.parseLong(params.get("after").get(0)) : 0;
+			long limit = params.containsKey("limit") ? Long.parseLong(params.get("limit").get(0)) : Long.MAX_VALUE;
+			own = own.stream().filter(id -> id > after).limit(limit).toList();
+		}
+		boolean ndjson = request.headers().getAccept().contains(ProductListWriter.APPLICATION_NDJSON);
+		List<String> products = own.stream()
+				.map(id -> "{\"id\":" + id + ",\"name\":\"p" + id + "\",\"price\":1.0,\"version\":1}")
+				.toList();
+		String body = ndjson ? String.join("\n", products) + "\n" : "[" + String.join(",", products) + "]";
+		return Mono.just(ClientResponse.create(HttpStatus.OK)
+				.header(HttpHeaders.CONTENT_TYPE, ndjson ? ProductListWriter.APPLICATION_NDJSON.toString() : MediaType.APPLICATION_JSON_VALUE)
+				.header(HttpHeaders.ETAG, eTag)
+				.body(body)
+				.build());
+	}
+
+	private String body(ResponseEntity<StreamingResponseBody> response) throws IOException {
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		response.getBody().writeTo(out);
+		return out.toString();
+	}
+
+	private List<Long> ids(String body) throws IOException {
+		List<Long> ids = new ArrayList<>();
+		if (body.startsWith("[")) {
+			for (Product product : objectMapper.readValue(body, Product[].class)) {
+				ids.add(product.getId());
+			}
+		} else {
+			for (String line : body.split("\n")) {
+				ids.add(objectMapper.readValue(line, Product.class).getId());
+			}
+		}
+		return ids;
+	}
+
+	private static MockHttpServletRequest get(String... params) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+		for (int i = 0; i < params.length; i += 2) {
+			request.addParameter(params[i], params[i + 1]);
+		}
+		return request;
+	}
+
+	private static MockHttpServletRequest withIfNoneMatch(MockHttpServletRequest request, String eTag) {
+		request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+		return request;
+	}
+}
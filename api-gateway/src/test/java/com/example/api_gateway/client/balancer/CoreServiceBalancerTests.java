@@ -0,0 +1,121 @@
+package com.example.api_gateway.client.balancer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoreServiceBalancerTests {
+
+	@Test
+	void powerOfTwoChoicesAvoidsTheBusyInstance() {
+		CoreServiceBalancer balancer = balancer("power_of_two_choices", "http://localhost:8081", "http://localhost:8082");
+		CoreServiceInstance busy = balancer.instances().get(0);
+		CoreServiceInstance idle = balancer.instances().get(1);
+		for (int i = 0; i < 10; i++) {
+			busy.requestStarted();
+		}
+
+		for (int i = 0; i < 100; i++) {
+			assertSame(idle, balancer.choose());
+		}
+	}
+
+	@Test
+	void leastRequestsPicksTheLeastLoadedInstance() {
+		CoreServiceBalancer balancer = balancer("least-requests", "http://a:1", "http://b:1", "http://c:1");
+		List<CoreServiceInstance> instances = balancer.instances();
+		instances.get(0).requestStarted();
+		instances.get(0).requestStarted();
+		instances.get(2).requestStarted();
+
+		assertSame(instances.get(1), balancer.choose());
+	}
+
+	@Test
+	void ejectsAfterConsecutiveFailuresButNeverEmptiesThePool() {
+		CoreServiceBalancer balancer = balancer("power_of_two_choices", "http://a:1", "http://b:1");
+		CoreServiceInstance failing = balancer.instances().get(0);
+		CoreServiceInstance healthy = balancer.instances().get(1);
+
+		for (int i = 0; i < 3; i++) {
+			balancer.onFailure(failing);
+		}
+		assertFalse(failing.isAvailable(System.nanoTime()));
+		assertEquals(1, failing.ejections());
+		for (int i = 0; i < 100; i++) {
+			assertSame(healthy, balancer.choose());
+		}
+
+		// Когда исключены все, запросы все равно идут на один из экземпляров
+		for (int i = 0; i < 3; i++) {
+			balancer.onFailure(healthy);
+		}
+		assertNotNull(balancer.choose());
+	}
+
+	@Test
+	void routesRequestsToTheShardOwningTheId() {
+		CoreServiceBalancer balancer = sharded("http://a:1,http://b:1;http://c:1", 10);
+		assertEquals(2, balancer.shardCount());
+		assertEquals(0, balancer.shardOf(1));
+		assertEquals(0, balancer.shardOf(10));
+		assertEquals(1, balancer.shardOf(11));
+		assertEquals(0, balancer.shardOf(21));
+
+		List<URI> routed = new ArrayList<>();
+		ExchangeFunction capture = request -> {
+			routed.add(request.url());
+			return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+		};
+		for (int i = 0; i < 20; i++) {
+			ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create(CoreServiceBalancer.BASE_URL + "/products/11"))
+					.attribute(CoreServiceBalancer.SHARD_ATTRIBUTE, balancer.shardOf(11))
+					.build();
+			balancer.filter(request, capture).block();
+		}
+		assertTrue(routed.stream().allMatch(uri -> uri.toString().equals("http://c:1/products/11")), routed.toString());
+	}
+
+	@Test
+	void severalInstancesPerShardRequireReplicatedState() {
+		IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> new CoreServiceBalancer(
+				new String[0], "http://a:1;http://b:1,http://c:1", 1024, false, "power_of_two_choices", 3,
+				Duration.ofMinutes(1), Duration.ofMinutes(5), false, "/actuator/health", Duration.ofSeconds(5),
+				Duration.ofSeconds(1), new ReactorClientHttpConnector(), new SimpleMeterRegistry()));
+		assertTrue(error.getMessage().contains("core.service.replicated-instances"), error.getMessage());
+
+		// Один экземпляр на шард допустим всегда
+		assertFalse(sharded("http://a:1;http://b:1", 1024).hasReplicatedInstances());
+		assertTrue(sharded("http://a:1;http://b:1,http://c:1", 1024).hasReplicatedInstances());
+	}
+
+	private static CoreServiceBalancer balancer(String policy, String... urls) {
+		return new CoreServiceBalancer(urls, "", 1024, true, policy, 3, Duration.ofMinutes(1), Duration.ofMinutes(5),
+				false, "/actuator/health", Duration.ofSeconds(5), Duration.ofSeconds(1),
+				new ReactorClientHttpConnector(), new SimpleMeterRegistry());
+	}
+
+	private static CoreServiceBalancer sharded(String shards, long idBlockSize) {
+		return new CoreServiceBalancer(new String[0], shards, idBlockSize, true, "power_of_two_choices", 3, Duration.ofMinutes(1),
+				Duration.ofMinutes(5), false, "/actuator/health", Duration.ofSeconds(5), Duration.ofSeconds(1),
+				new ReactorClientHttpConnector(), new SimpleMeterRegistry());
+	}
+}
@@ -0,0 +1,158 @@
+package com.example.api_gateway.client.limit;
+
+import com.example.api_gateway.client.balancer.CoreServiceBalancer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTests {
+
+	@Test
+	void shedsWritesBeforeReads() {
+		AdaptiveConcurrencyLimiter limiter = limiter(10, false, new SimpleMeterRegistry());
+		for (int i = 0; i < 8; i++) {
+			assertTrue(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Route.WRITE));
+		}
+		assertFalse(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Route.WRITE));
+		assertTrue(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Route.READ));
+		assertTrue(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Route.READ));
+		assertFalse(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Route.READ));
+
+		limiter.release();
+		assertTrue(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Route.READ));
+	}
+
+	@Test
+	void limitBacksOffOnOverloadAndGrowsBackWhenFast() {
+		AdaptiveConcurrencyLimiter limiter = limiter(10, false, new SimpleMeterRegistry());
+		limiter.onSample(Duration.ofSeconds(1).toNanos(), false);
+		assertEquals(9, limiter.limit());
+		// Вторая медленная волна сразу за первой лимит не трогает
+		limiter.onSample(0, true);
+		assertEquals(9, limiter.limit());
+
+		for (int i = 0; i < 9; i++) {
+			limiter.tryAcquire(AdaptiveConcurrencyLimiter.Route.READ);
+		}
+		for (int i = 0; i < 30; i++) {
+			limiter.onSample(Duration.ofMillis(1).toNanos(), false);
+		}
+		assertEquals(11, limiter.limit());
+	}
+
+	@Test
+	void hedgesSlowReadWithSecondRequest() throws InterruptedException {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		AdaptiveConcurrencyLimiter limiter = limiter(64, true, registry);
+		ExchangeFunction fast = request -> Mono.just(ClientResponse.create(HttpStatus.OK).build());
+		for (int i = 0; i < 256; i++) {
+			limiter.filter(get("/products/1"), fast).flatMap(ClientResponse::releaseBody).block();
+		}
+
+		// Первый запрос зависает, дубль отвечает сразу
+		AtomicInteger calls = new AtomicInteger();
+		ExchangeFunction stuckOnce = request -> calls.getAndIncrement() == 0
+				? Mono.never()
+				: Mono.just(ClientResponse.create(HttpStatus.OK).build());
+		ClientResponse response = limiter.filter(get("/products/1"), stuckOnce).block(Duration.ofSeconds(1));
+
+		assertEquals(HttpStatus.OK, response.statusCode());
+		assertEquals(2, calls.get());
+		assertEquals(1, registry.counter("gateway.hedging.wins").count());
+		response.releaseBody().block();
+		// Место отмененного основного запроса освобождается в doFinally, уже после того как ответ дошел до block()
+		for (int i = 0; i < 100 && limiter.inFlight() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, limiter.inFlight());
+	}
+
+	@Test
+	void hedgingNeedsSeveralInstancesOfShard() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		AdaptiveConcurrencyLimiter limiter = limiter(64, true, balancer(false, "http://a:1", "http://b:1"), registry);
+		ExchangeFunction fast = request -> Mono.just(ClientResponse.create(HttpStatus.OK).build());
+		for (int i = 0; i < 256; i++) {
+			limiter.filter(get("/products/1"), fast).flatMap(ClientResponse::releaseBody).block();
+		}
+
+		AtomicInteger calls = new AtomicInteger();
+		ExchangeFunction stuck = request -> {
+			calls.incrementAndGet();
+			return Mono.never();
+		};
+		limiter.filter(get("/products/1"), stuck).subscribe().dispose();
+		assertEquals(1, calls.get());
+		assertEquals(0, registry.counter("gateway.hedging.requests").count());
+		assertEquals(0, limiter.inFlight());
+	}
+
+	@Test
+	void permitIsHeldUntilBodyIsConsumedOrCancelled() {
+		AdaptiveConcurrencyLimiter limiter = limiter(64, false, new SimpleMeterRegistry());
+		Sinks.Many<String> chunks = Sinks.many().unicast().onBackpressureBuffer();
+		ClientResponse response = limiter.filter(get("/products"), streaming(chunks)).block();
+		// Заголовки получены, но тело еще идет - место занято
+		assertEquals(1, limiter.inFlight());
+		StringBuilder body = new StringBuilder();
+		response.bodyToFlux(String.class).subscribe(body::append);
+		chunks.tryEmitNext("[1,");
+		assertEquals(1, limiter.inFlight());
+		chunks.tryEmitNext("2]");
+		chunks.tryEmitComplete();
+		assertEquals("[1,2]", body.toString());
+		assertEquals(0, limiter.inFlight());
+
+		// Отмена чтения тела тоже освобождает место, причем один раз
+		Sinks.Many<String> endless = Sinks.many().unicast().onBackpressureBuffer();
+		ClientResponse cancelled = limiter.filter(get("/products"), streaming(endless)).block();
+		assertEquals(1, limiter.inFlight());
+		cancelled.bodyToFlux(String.class).subscribe().dispose();
+		assertEquals(0, limiter.inFlight());
+	}
+
+	private static AdaptiveConcurrencyLimiter limiter(int limit, boolean hedging, SimpleMeterRegistry registry) {
+		return limiter(limit, hedging, balancer(true, "http://a:1", "http://b:1"), registry);
+	}
+
+	private static AdaptiveConcurrencyLimiter limiter(int limit, boolean hedging, CoreServiceBalancer balancer,
+													  SimpleMeterRegistry registry) {
+		return new AdaptiveConcurrencyLimiter(true, limit, 1, 100, Duration.ofMillis(500), 0.9, 0.8,
+				Duration.ofSeconds(2), Duration.ofSeconds(10), Duration.ofSeconds(5),
+				hedging, 95, Duration.ofMillis(1), balancer, registry);
+	}
+
+	// Один шард; несколько экземпляров допустимы только с replicatedInstances
+	private static CoreServiceBalancer balancer(boolean replicatedInstances, String... urls) {
+		return new CoreServiceBalancer(replicatedInstances ? urls : new String[]{urls[0]}, "", 1024, replicatedInstances,
+				"power_of_two_choices", 3, Duration.ofMinutes(1), Duration.ofMinutes(5), false, "/actuator/health",
+				Duration.ofSeconds(5), Duration.ofSeconds(1), new ReactorClientHttpConnector(), new SimpleMeterRegistry());
+	}
+
+	// core-service, который отдает тело ответа кусками по мере поступления в chunks
+	private static ExchangeFunction streaming(Sinks.Many<String> chunks) {
+		return request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+				.body(chunks.asFlux().map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes())))
+				.build());
+	}
+
+	private static ClientRequest get(String path) {
+		return ClientRequest.create(HttpMethod.GET, URI.create("http://core-service" + path)).build();
+	}
+}
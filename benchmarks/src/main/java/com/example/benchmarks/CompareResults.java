@@ -0,0 +1,83 @@
+package com.example.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Сравнение двух отчетов JMH (-rf json) - базового и текущего.
+// Запуск:
+//   java -jar benchmarks/target/benchmarks.jar -rf json -rff baseline.json      (до изменения)
+//   java -jar benchmarks/target/benchmarks.jar -rf json -rff current.json       (после)
+//   java -cp benchmarks/target/benchmarks.jar com.example.benchmarks.CompareResults baseline.json current.json
+// Изменение помечается "*", если разница больше суммы погрешностей (99.9% доверительных интервалов) обоих замеров.
+// Для throughput больше - лучше, для времени на операцию - наоборот; знак изменения берется как есть
+public class CompareResults {
+
+    record Score(double value, double error, String unit) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <current.json>");
+            System.exit(2);
+        }
+        Map<String, Score> baseline = read(new File(args[0]));
+        Map<String, Score> current = read(new File(args[1]));
+
+        System.out.printf("%-80s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score after = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-80s %14s %14.3f %9s  %s%n", entry.getKey(), "-", after.value(), "new", after.unit());
+                continue;
+            }
+            double change = (after.value() - before.value()) / before.value() * 100;
+            boolean significant = Math.abs(after.value() - before.value()) > before.error() + after.error();
+            System.out.printf("%-80s %14.3f %14.3f %+8.1f%%%s %s%n", entry.getKey(), before.value(), after.value(),
+                    change, significant ? "*" : " ", after.unit());
+        }
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.printf("%-80s %14.3f %14s %9s%n", name, baseline.get(name).value(), "-", "removed");
+            }
+        }
+    }
+
+    // Ключ - имя бенчмарка, режим и параметры, например ProductRepositoryBenchmark.findById thrpt store=memory size=100000
+    private static Map<String, Score> read(File file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(run.get("benchmark").asText().replace("com.example.benchmarks.", ""))
+                    .append(' ').append(run.get("mode").asText());
+            JsonNode params = run.get("params");
+            if (params != null) {
+                for (Iterator<Map.Entry<String, JsonNode>> it = params.fields(); it.hasNext(); ) {
+                    Map.Entry<String, JsonNode> param = it.next();
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+                }
+            }
+            addScore(scores, key.toString(), run.get("primaryMetric"));
+            // Для @Group-бенчмарков JMH дает результат каждой роли во вторичных метриках
+            JsonNode secondary = run.get("secondaryMetrics");
+            if (secondary != null) {
+                for (Iterator<Map.Entry<String, JsonNode>> it = secondary.fields(); it.hasNext(); ) {
+                    Map.Entry<String, JsonNode> metric = it.next();
+                    addScore(scores, key + " :" + metric.getKey(), metric.getValue());
+                }
+            }
+        }
+        return scores;
+    }
+
+    private static void addScore(Map<String, Score> scores, String key, JsonNode metric) {
+        double error = metric.get("scoreError").asDouble();
+        scores.put(key, new Score(metric.get("score").asDouble(), Double.isNaN(error) ? 0 : error,
+                metric.get("scoreUnit").asText()));
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.benchmarks;
+
+import com.example.api_gateway.ApiGatewayApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Путь запроса через GatewayController до core-service и обратно.
+// Вместо core-service - заглушка на Reactor Netty с готовыми ответами, поэтому меряется только работа шлюза:
+// Tomcat, контроллер, WebClient и балансировщик. Кэш и объединение запросов выключены,
+// чтобы каждый запрос действительно уходил в заглушку
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+@Threads(4)
+public class GatewayForwardingBenchmark {
+
+    private static final int LIST_SIZE = 1000;
+
+    private DisposableServer stub;
+    private ConfigurableApplicationContext gateway;
+    private HttpClient client;
+    private URI gatewayUri;
+    private HttpRequest listRequest;
+    private HttpRequest createRequest;
+
+    @Setup
+    public void start() {
+        byte[] product = "{\"id\":1,\"name\":\"Product 1\",\"price\":1.99,\"version\":1}".getBytes(StandardCharsets.UTF_8);
+        StringBuilder list = new StringBuilder("[");
+        for (int id = 1; id <= LIST_SIZE; id++) {
+            list.append(id == 1 ? "" : ",").append("{\"id\":").append(id)
+                    .append(",\"name\":\"Product ").append(id).append("\",\"price\":").append(id % 1000 + 0.99).append(",\"version\":1}");
+        }
+        byte[] products = list.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+        stub = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .get("/products/{id}", (request, response) -> json(response, product))
+                        .get("/products", (request, response) -> json(response, products))
+                        .post("/products", (request, response) -> request.receive().then()
+                                .then(json(response.status(201), product))))
+                .bindNow();
+
+        // Аргументы командной строки перекрывают application.properties шлюза
+        gateway = new SpringApplicationBuilder(ApiGatewayApplication.class)
+                .run("--server.port=0",
+                        "--core.service.urls=http://localhost:" + stub.port(),
+                        "--gateway.cache.enabled=false",
+                        "--gateway.coalescing.enabled=false",
+                        "--gateway.batching.enabled=false",
+                        "--gateway.upstream.health-check.enabled=false",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN");
+        int port = ((WebServerApplicationContext) gateway).getWebServer().getPort();
+        gatewayUri = URI.create("http://localhost:" + port);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        listRequest = HttpRequest.newBuilder(gatewayUri.resolve("/api/products")).GET().build();
+        createRequest = HttpRequest.newBuilder(gatewayUri.resolve("/api/products"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"Product\",\"price\":1.99}"))
+                .build();
+    }
+
+    @TearDown
+    public void stop() {
+        gateway.close();
+        stub.disposeNow();
+    }
+
+    // Типизированный путь: ответ разбирается в dto.Product и кодируется заново
+    @Benchmark
+    public int getProductById() throws IOException, InterruptedException {
+        long id = 1 + ThreadLocalRandom.current().nextInt(LIST_SIZE);
+        HttpRequest request = HttpRequest.newBuilder(gatewayUri.resolve("/api/products/" + id)).GET().build();
+        return send(request);
+    }
+
+    // Потоковая пересылка списка из 1000 продуктов (~60 КБ)
+    @Benchmark
+    public int listProducts() throws IOException, InterruptedException {
+        return send(listRequest);
+    }
+
+    @Benchmark
+    public int createProduct() throws IOException, InterruptedException {
+        return send(createRequest);
+    }
+
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() >= 300) {
+            throw new IllegalStateException("Gateway answered " + response.statusCode() + " for " + request.uri());
+        }
+        return response.body().length;
+    }
+
+    private static Mono<Void> json(HttpServerResponse response, byte[] body) {
+        return response.header("Content-Type", "application/json")
+                .sendByteArray(Mono.just(body))
+                .then();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.benchmarks;
+
+import com.example.coreservice.model.Product;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Jackson-сериализация продукта в обоих сервисах: core-service (model.Product, написан вручную)
+// и api-gateway (dto.Product, Lombok). ObjectMapper настроен так же, как в Spring Boot по умолчанию.
+// Список - 1000 продуктов, как страница GET /products
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductJsonBenchmark {
+
+    private static final int LIST_SIZE = 1000;
+
+    private ObjectWriter coreWriter;
+    private ObjectReader coreReader;
+    private ObjectWriter coreListWriter;
+    private ObjectReader coreListReader;
+    private ObjectWriter gatewayWriter;
+    private ObjectReader gatewayReader;
+    private ObjectWriter gatewayListWriter;
+    private ObjectReader gatewayListReader;
+
+    private Product coreProduct;
+    private List<Product> coreProducts;
+    private com.example.api_gateway.dto.Product gatewayProduct;
+    private List<com.example.api_gateway.dto.Product> gatewayProducts;
+    private byte[] productJson;
+    private byte[] listJson;
+
+    @Setup
+    public void prepare() throws JsonProcessingException {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        coreWriter = mapper.writerFor(Product.class);
+        coreReader = mapper.readerFor(Product.class);
+        coreListWriter = mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class, Product.class));
+        coreListReader = mapper.readerForListOf(Product.class);
+        gatewayWriter = mapper.writerFor(com.example.api_gateway.dto.Product.class);
+        gatewayReader = mapper.readerFor(com.example.api_gateway.dto.Product.class);
+        gatewayListWriter = mapper.writerFor(mapper.getTypeFactory()
+                .constructCollectionType(List.class, com.example.api_gateway.dto.Product.class));
+        gatewayListReader = mapper.readerForListOf(com.example.api_gateway.dto.Product.class);
+
+        coreProducts = new ArrayList<>(LIST_SIZE);
+        gatewayProducts = new ArrayList<>(LIST_SIZE);
+        for (long id = 1; id <= LIST_SIZE; id++) {
+            coreProducts.add(new Product(id, "Product " + id, id % 1000 + 0.99, 1));
+            gatewayProducts.add(new com.example.api_gateway.dto.Product(id, "Product " + id, id % 1000 + 0.99, 1));
+        }
+        coreProduct = coreProducts.get(0);
+        gatewayProduct = gatewayProducts.get(0);
+        productJson = coreWriter.writeValueAsBytes(coreProduct);
+        listJson = coreListWriter.writeValueAsBytes(coreProducts);
+    }
+
+    @Benchmark
+    public byte[] coreSerialize() throws JsonProcessingException {
+        return coreWriter.writeValueAsBytes(coreProduct);
+    }
+
+    @Benchmark
+    public Product coreDeserialize() throws Exception {
+        return coreReader.readValue(productJson);
+    }
+
+    @Benchmark
+    public byte[] coreSerializeList() throws JsonProcessingException {
+        return coreListWriter.writeValueAsBytes(coreProducts);
+    }
+
+    @Benchmark
+    public List<Product> coreDeserializeList() throws Exception {
+        return coreListReader.readValue(listJson);
+    }
+
+    @Benchmark
+    public byte[] gatewaySerialize() throws JsonProcessingException {
+        return gatewayWriter.writeValueAsBytes(gatewayProduct);
+    }
+
+    @Benchmark
+    public com.example.api_gateway.dto.Product gatewayDeserialize() throws Exception {
+        return gatewayReader.readValue(productJson);
+    }
+
+    @Benchmark
+    public byte[] gatewaySerializeList() throws JsonProcessingException {
+        return gatewayListWriter.writeValueAsBytes(gatewayProducts);
+    }
+
+    @Benchmark
+    public List<com.example.api_gateway.dto.Product> gatewayDeserializeList() throws Exception {
+        return gatewayListReader.readValue(listJson);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.benchmarks;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.CompactProductRepository;
+import com.example.coreservice.repository.InMemoryProductRepository;
+import com.example.coreservice.repository.MeteredProductRepository;
+import com.example.coreservice.repository.ObservableProductRepository;
+import com.example.coreservice.repository.ProductRepository;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Операции хранилища продуктов под конкурентной нагрузкой (4 потока на одно хранилище).
+// mixed - 3 читателя и 1 писатель одновременно, результат по каждой роли отдельно.
+// Дополнительно (-p store=observable,metered): InMemory за ObservableProductRepository без метрик и с метриками
+// как в core-service (MeteredProductRepository, реестр Prometheus с гистограммами) - цена метрик на операцию
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductRepositoryBenchmark {
+
+    @Param({"memory", "compact"})
+    public String store;
+
+    @Param({"100000"})
+    public int size;
+
+    private ProductRepository repository;
+
+    @Setup
+    public void fill() {
+        repository = switch (store) {
+            case "memory" -> new InMemoryProductRepository();
+            case "compact" -> new CompactProductRepository();
+            case "observable" -> new ObservableProductRepository(new InMemoryProductRepository());
+            case "metered" -> new MeteredProductRepository(
+                    new ObservableProductRepository(new InMemoryProductRepository()), histogramRegistry());
+            default -> throw new IllegalArgumentException("Unknown store: " + store);
+        };
+        List<Product> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            products.add(new Product(null, "Product " + i, i % 1000 + 0.99));
+        }
+        repository.saveAll(products);
+    }
+
+    // Как management.metrics.distribution.percentiles-histogram.core.repository.operations=true
+    private static PrometheusMeterRegistry histogramRegistry() {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                return DistributionStatisticConfig.builder().percentilesHistogram(true).build().merge(config);
+            }
+        });
+        return registry;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<Product> findById() {
+        return repository.findById(randomId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<Product> update() {
+        long id = randomId();
+        return repository.update(id, new Product(null, "Updated " + id, id % 1000 + 1.99));
+    }
+
+    // Сохранение и удаление парой, чтобы размер хранилища не менялся от итерации к итерации
+    @Benchmark
+    @Threads(4)
+    public boolean saveThenDelete() {
+        Product saved = repository.save(new Product(null, "Temporary", 9.99));
+        return repository.deleteById(saved.getId());
+    }
+
+    // Полный список - как GET /products без параметров
+    @Benchmark
+    @Threads(4)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public List<Product> findAll() {
+        return repository.findAll();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Optional<Product> mixedRead() {
+        return repository.findById(randomId());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Optional<Product> mixedWrite() {
+        long id = randomId();
+        return repository.update(id, new Product(null, "Updated " + id, id % 1000 + 1.99));
+    }
+
+    private long randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(size);
+    }
+}
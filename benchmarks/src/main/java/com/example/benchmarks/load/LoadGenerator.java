@@ -0,0 +1,376 @@
+package com.example.benchmarks.load;
+
+import com.example.benchmarks.load.LoadMix.Operation;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Нагрузочный генератор для связки api-gateway (8080) -> core-service (8081) с открытой моделью нагрузки:
+// запросы отправляются с фиксированной частотой независимо от того, успели ли ответить предыдущие.
+// По умолчанию сам запускает оба сервиса из собранных с профилем benchmarks *-exec.jar (отдельными JVM),
+// наполняет каталог и гоняет смесь CRUD-операций через /api/products. Результат - JSON с пропускной способностью
+// (все ответы и только 2xx - goodput) и задержками p50/p99/p99.9 по каждой операции.
+// Запуск (из корня репозитория после mvn -Pbenchmarks package):
+//   java -cp benchmarks/target/benchmarks.jar com.example.benchmarks.load.LoadGenerator \
+//       --rate=500 --duration=60s --mix=read=70,list=5,create=10,update=10,delete=5 --output=loadtest.json
+// Параметры (--name=value):
+//   rate          запросов в секунду (500)          duration     длительность замера (60s)
+//   warmup        прогрев перед замером (15s)        mix          доли операций (см. выше)
+//   seed          продуктов перед стартом (10000)    list-limit   размер страницы для list (100)
+//   max-in-flight лимит запросов в полете (2048)      timeout      таймаут запроса (10s)
+//                 (сверх лимита запрос не отправляется и учитывается в задержках как истекший по таймауту)
+//   output        файл отчета (loadtest-<время>.json)
+//   target        URL уже запущенного шлюза - тогда сервисы не запускаются
+//   core-jar, gateway-jar, core-args, gateway-args, core-port, gateway-port - запуск сервисов
+//   shards        число шардов core-service (1): шард i слушает core-port + i, шлюз получает core.service.shards
+public class LoadGenerator {
+
+    private static final ObjectMapper JSON = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final int SEED_BATCH = 1000;
+
+    private final URI target;
+    private final HttpClient client;
+    private final LoadMix mix;
+    private final int rate;
+    private final Duration duration;
+    private final Duration warmup;
+    private final int listLimit;
+    private final int maxInFlight;
+    private final Duration timeout;
+
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Наибольший известный ID: чтение, изменение и удаление выбирают ID из [1, maxId]
+    private final AtomicLong maxId = new AtomicLong();
+
+    LoadGenerator(URI target, LoadMix mix, int rate, Duration duration, Duration warmup, int listLimit,
+                  int maxInFlight, Duration timeout) {
+        this.target = target;
+        this.mix = mix;
+        this.rate = rate;
+        this.duration = duration;
+        this.warmup = warmup;
+        this.listLimit = listLimit;
+        this.maxInFlight = maxInFlight;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (Operation operation : mix.operations()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        LoadMix mix = LoadMix.parse(options.getOrDefault("mix", "read=70,list=5,create=10,update=10,delete=5"));
+        int rate = Integer.parseInt(options.getOrDefault("rate", "500"));
+        Duration duration = parseDuration(options.getOrDefault("duration", "60s"));
+        Duration warmup = parseDuration(options.getOrDefault("warmup", "15s"));
+        int seed = Integer.parseInt(options.getOrDefault("seed", "10000"));
+        String output = options.getOrDefault("output", "loadtest-" + System.currentTimeMillis() + ".json");
+
+        List<Process> services = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> services.forEach(Process::destroy)));
+        URI target;
+        if (options.containsKey("target")) {
+            target = URI.create(options.get("target"));
+        } else {
+            int corePort = Integer.parseInt(options.getOrDefault("core-port", "8081"));
+            int gatewayPort = Integer.parseInt(options.getOrDefault("gateway-port", "8080"));
+            int shards = Integer.parseInt(options.getOrDefault("shards", "1"));
+            if (shards < 1) {
+                throw new IllegalArgumentException("--shards must be positive: " + shards);
+            }
+            // Шард i - отдельный core-service на corePort + i со своим каталогом данных
+            List<String> coreUrls = new ArrayList<>();
+            for (int shard = 0; shard < shards; shard++) {
+                String shardArgs = shards == 1 ? "" : "--core.shard.index=" + shard + " --core.shard.count=" + shards
+                        + " --core.repository.persistent.directory=data/shard-" + shard + " ";
+                services.add(startService(shards == 1 ? "core-service" : "core-service-" + shard,
+                        options.getOrDefault("core-jar", "core-service/target/core-service-0.0.1-SNAPSHOT-exec.jar"),
+                        corePort + shard, shardArgs + options.getOrDefault("core-args", "")));
+                coreUrls.add("http://localhost:" + (corePort + shard));
+            }
+            String upstreams = shards == 1 ? "--core.service.urls=" + coreUrls.get(0)
+                    : "--core.service.shards=" + String.join(";", coreUrls);
+            services.add(startService("api-gateway",
+                    options.getOrDefault("gateway-jar", "api-gateway/target/api-gateway-0.0.1-SNAPSHOT-exec.jar"),
+                    gatewayPort, upstreams + " " + options.getOrDefault("gateway-args", "")));
+            for (int shard = 0; shard < shards; shard++) {
+                awaitHealthy(services.get(shard), URI.create(coreUrls.get(shard) + "/actuator/health"));
+            }
+            awaitHealthy(services.get(shards), URI.create("http://localhost:" + gatewayPort + "/actuator/health"));
+            target = URI.create("http://localhost:" + gatewayPort);
+        }
+
+        int listLimit = Integer.parseInt(options.getOrDefault("list-limit", "100"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "2048"));
+        Duration timeout = parseDuration(options.getOrDefault("timeout", "10s"));
+        LoadGenerator generator = new LoadGenerator(target, mix, rate, duration, warmup, listLimit, maxInFlight, timeout);
+        generator.seed(seed);
+        Map<String, Object> report = generator.run();
+
+        // Фактические параметры прогона (с учетом значений по умолчанию) - чтобы сравнивать только сравнимое
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("rate", rate);
+        config.put("durationSeconds", duration.toSeconds());
+        config.put("warmupSeconds", warmup.toSeconds());
+        config.put("seed", seed);
+        config.put("listLimit", listLimit);
+        config.put("maxInFlight", maxInFlight);
+        config.put("timeoutMillis", timeout.toMillis());
+        config.put("shards", Integer.parseInt(options.getOrDefault("shards", "1")));
+        config.put("coreArgs", options.getOrDefault("core-args", ""));
+        config.put("gatewayArgs", options.getOrDefault("gateway-args", ""));
+        config.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        config.put("javaVersion", Runtime.version().toString());
+        report.put("config", config);
+        JSON.writeValue(new File(output), report);
+        System.out.println("Report written to " + Path.of(output).toAbsolutePath());
+        services.forEach(Process::destroy);
+        System.exit(0);
+    }
+
+    // Наполняет каталог пакетами через шлюз
+    void seed(int count) throws IOException, InterruptedException {
+        for (int written = 0; written < count; written += SEED_BATCH) {
+            StringBuilder body = new StringBuilder("[");
+            for (int i = written; i < Math.min(count, written + SEED_BATCH); i++) {
+                body.append(i == written ? "" : ",").append("{\"name\":\"Product ").append(i)
+                        .append("\",\"price\":").append(i % 1000 + 0.99).append('}');
+            }
+            body.append(']');
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(target.resolve("/api/products/batch"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 201) {
+                throw new IllegalStateException("Seeding failed with status " + response.statusCode() + ": " + response.body());
+            }
+            for (JsonNode product : JSON.readTree(response.body())) {
+                maxId.accumulateAndGet(product.get("id").asLong(), Math::max);
+            }
+        }
+        System.out.println("Seeded " + count + " products, max id " + maxId.get());
+    }
+
+    // Открытая модель: i-й запрос запланирован на start + i / rate и отправляется в этот момент,
+    // сколько бы запросов ни ждали ответа. Первые warmup секунд в статистику не попадают
+    Map<String, Object> run() throws InterruptedException {
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        long measureStart = start + warmup.toNanos();
+        long end = measureStart + duration.toNanos();
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / (double) rate;
+        System.out.println("Running " + mix + " at " + rate + " req/s: warmup " + warmup.toSeconds()
+                + "s, measurement " + duration.toSeconds() + "s against " + target);
+
+        long scheduled = 0;
+        long lagged = 0;
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * intervalNanos);
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else if (wait < -TimeUnit.MILLISECONDS.toNanos(1)) {
+                lagged++;
+            }
+            boolean measured = intended >= measureStart;
+            Operation operation = mix.next(random);
+            OperationStats operationStats = measured ? stats.get(operation) : null;
+            if (inFlight.get() >= maxInFlight) {
+                if (operationStats != null) {
+                    operationStats.recordDropped(timeout.toNanos());
+                }
+                continue;
+            }
+            scheduled++;
+            send(operation, random, intended, operationStats);
+        }
+        awaitInFlight(timeout.plusSeconds(5));
+        return report(TimeUnit.NANOSECONDS.toMillis(end - measureStart) / 1000.0, scheduled, lagged);
+    }
+
+    private void send(Operation operation, Random random, long intended, OperationStats operationStats) {
+        long id = 1 + (long) (random.nextDouble() * Math.max(1, maxId.get()));
+        HttpRequest.Builder request = switch (operation) {
+            case READ -> HttpRequest.newBuilder(target.resolve("/api/products/" + id)).GET();
+            case LIST -> HttpRequest.newBuilder(target.resolve("/api/products?limit=" + listLimit)).GET();
+            case CREATE -> HttpRequest.newBuilder(target.resolve("/api/products"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"Load " + id + "\",\"price\":" + (id % 1000) + ".5}"));
+            case UPDATE -> HttpRequest.newBuilder(target.resolve("/api/products/" + id))
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString("{\"name\":\"Updated " + id + "\",\"price\":" + (id % 1000) + ".25}"));
+            case DELETE -> HttpRequest.newBuilder(target.resolve("/api/products/" + id)).DELETE();
+        };
+        inFlight.incrementAndGet();
+        client.sendAsync(request.timeout(timeout).build(), HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, error) -> {
+                    long latency = System.nanoTime() - intended;
+                    inFlight.decrementAndGet();
+                    if (operationStats != null) {
+                        if (error != null) {
+                            operationStats.recordFailure(latency);
+                        } else {
+                            operationStats.record(latency, response.statusCode());
+                        }
+                    }
+                    if (error == null && operation == Operation.CREATE && response.statusCode() == 201) {
+                        trackCreatedId(response.body());
+                    }
+                });
+    }
+
+    private void trackCreatedId(byte[] body) {
+        try {
+            maxId.accumulateAndGet(JSON.readTree(body).get("id").asLong(), Math::max);
+        } catch (IOException | NullPointerException e) {
+            // Ответ без ID не мешает нагрузке - просто не расширяем диапазон ID
+        }
+    }
+
+    private void awaitInFlight(Duration limit) throws InterruptedException {
+        long deadline = System.nanoTime() + limit.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private Map<String, Object> report(double measuredSeconds, long scheduled, long lagged) {
+        Map<String, Object> operations = new LinkedHashMap<>();
+        long requests = 0;
+        long completed = 0;
+        long succeeded = 0;
+        long dropped = 0;
+        System.out.printf("%-8s %10s %10s %10s %10s %10s %10s %10s %8s%n",
+                "op", "requests", "req/s", "2xx/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats operationStats = entry.getValue();
+            Map<String, Object> operationReport = operationStats.report(measuredSeconds);
+            operations.put(entry.getKey().name().toLowerCase(), operationReport);
+            requests += operationStats.requests();
+            completed += operationStats.completed();
+            succeeded += operationStats.succeeded();
+            dropped += operationStats.dropped();
+            @SuppressWarnings("unchecked")
+            Map<String, Object> outcomes = (Map<String, Object>) operationReport.get("outcomes");
+            long errors = (long) outcomes.get("serverErrors") + (long) outcomes.get("failures") + (long) outcomes.get("dropped");
+            System.out.printf("%-8s %10d %10.1f %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n",
+                    entry.getKey().name().toLowerCase(), operationStats.requests(), operationStats.completed() / measuredSeconds,
+                    operationStats.succeeded() / measuredSeconds,
+                    operationStats.percentileMillis(50), operationStats.percentileMillis(99),
+                    operationStats.percentileMillis(99.9), operationStats.percentileMillis(100), errors);
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("targetRatePerSecond", rate);
+        summary.put("measuredSeconds", measuredSeconds);
+        summary.put("requests", requests);
+        summary.put("completedRequests", completed);
+        // Ответы с любым статусом в секунду; goodput - только 2xx
+        summary.put("throughputPerSecond", completed / measuredSeconds);
+        summary.put("goodputPerSecond", succeeded / measuredSeconds);
+        // Не отправлены из-за max-in-flight; в гистограммах учтены с задержкой, равной таймауту
+        summary.put("droppedRequests", dropped);
+        summary.put("requestsSentIncludingWarmup", scheduled);
+        // Запросы, отправленные позже запланированного более чем на 1 мс: генератор не справлялся с частотой
+        summary.put("lateSends", lagged);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("target", target.toString());
+        report.put("mix", mix.toString());
+        report.put("summary", summary);
+        report.put("operations", operations);
+        System.out.printf("total    %10d %10.1f %10.1f  (target %d req/s, dropped %d)%n",
+                requests, completed / measuredSeconds, succeeded / measuredSeconds, rate, dropped);
+        return report;
+    }
+
+    private static Process startService(String name, String jar, int port, String extraArgs) throws IOException {
+        if (!new File(jar).isFile()) {
+            throw new IllegalStateException(jar + " not found: run mvn -Pbenchmarks package first or pass the jar path for " + name);
+        }
+        List<String> command = new ArrayList<>(List.of(ProcessHandle.current().info().command().orElse("java"),
+                "-jar", jar, "--server.port=" + port));
+        for (String arg : extraArgs.trim().split("\\s+")) {
+            if (!arg.isEmpty()) {
+                command.add(arg);
+            }
+        }
+        File log = new File(name + "-loadtest.log");
+        System.out.println("Starting " + name + " on port " + port + " (log: " + log + ")");
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+    }
+
+    private static void awaitHealthy(Process process, URI health) throws InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(3);
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Service exited with code " + process.exitValue() + " before " + health + " came up");
+            }
+            try {
+                if (client.send(HttpRequest.newBuilder(health).build(), HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Еще не слушает порт
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException(health + " did not become healthy in time");
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            int split = arg.indexOf('=');
+            options.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+        return options;
+    }
+
+    // 30s, 500ms, 2m или число секунд
+    private static Duration parseDuration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(value));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.benchmarks.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+// Доли операций в нагрузке, например "read=70,list=5,create=10,update=10,delete=5".
+// Веса не обязаны давать в сумме 100: операция выбирается пропорционально своему весу
+final class LoadMix {
+
+    enum Operation {
+        READ,    // GET /api/products/{id}
+        LIST,    // GET /api/products?limit=N
+        CREATE,  // POST /api/products
+        UPDATE,  // PUT /api/products/{id}
+        DELETE   // DELETE /api/products/{id}
+    }
+
+    private final Map<Operation, Integer> weights;
+    private final Operation[] operations;
+    private final int[] cumulative;
+    private final int total;
+
+    private LoadMix(Map<Operation, Integer> weights) {
+        this.weights = weights;
+        this.operations = weights.keySet().toArray(new Operation[0]);
+        this.cumulative = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += weights.get(operations[i]);
+            cumulative[i] = sum;
+        }
+        this.total = sum;
+    }
+
+    static LoadMix parse(String spec) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split("[=:]");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight, got: " + part);
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + pair[0]);
+            }
+            if (weight > 0) {
+                weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Load mix has no operations: " + spec);
+        }
+        return new LoadMix(weights);
+    }
+
+    Operation next(Random random) {
+        int point = random.nextInt(total);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (point < cumulative[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    Iterable<Operation> operations() {
+        return weights.keySet();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        weights.forEach((operation, weight) -> result.append(result.isEmpty() ? "" : ",")
+                .append(operation.name().toLowerCase()).append('=').append(weight));
+        return result.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.benchmarks.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Результаты одной операции: гистограмма задержек (мкс) и счетчики исходов.
+// Задержка считается от запланированного момента отправки, а не от фактического:
+// если генератор или клиент не успели отправить запрос вовремя, ожидание тоже попадает в задержку
+// (поправка на coordinated omission). Не отправленный из-за лимита запросов в полете тоже попадает
+// в гистограмму - с задержкой, равной таймауту запроса: для клиента это такой же несостоявшийся ответ,
+// а без него перегрузка выглядела бы как улучшение задержек
+final class OperationStats {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Histogram latencies = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final LongAdder success = new LongAdder();      // 2xx
+    private final LongAdder clientErrors = new LongAdder(); // 4xx, в основном 404 для уже удаленных ID
+    private final LongAdder serverErrors = new LongAdder(); // 5xx
+    private final LongAdder failures = new LongAdder();     // Таймаут или ошибка соединения
+    private final LongAdder dropped = new LongAdder();      // Не отправлен: превышен лимит запросов в полете
+
+    void record(long latencyNanos, int status) {
+        latencies.recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        if (status >= 500) {
+            serverErrors.increment();
+        } else if (status >= 400) {
+            clientErrors.increment();
+        } else {
+            success.increment();
+        }
+    }
+
+    void recordFailure(long latencyNanos) {
+        latencies.recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        failures.increment();
+    }
+
+    void recordDropped(long timeoutNanos) {
+        latencies.recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(timeoutNanos)));
+        dropped.increment();
+    }
+
+    // Все запросы замера, включая не отправленные
+    long requests() {
+        return latencies.getTotalCount();
+    }
+
+    // Запросы, на которые пришел ответ с любым статусом
+    long completed() {
+        return success.sum() + clientErrors.sum() + serverErrors.sum();
+    }
+
+    // Запросы с ответом 2xx
+    long succeeded() {
+        return success.sum();
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    double percentileMillis(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    // Раздел отчета по операции; histogram - сжатая гистограмма HdrHistogram в Base64 для точного сравнения прогонов
+    Map<String, Object> report(double measuredSeconds) {
+        // Ответы, опоздавшие к концу замера, могут еще записываться - отчет строится по копии
+        Histogram snapshot = latencies.copy();
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("min", snapshot.getMinValue() / 1000.0);
+        latency.put("mean", snapshot.getMean() / 1000.0);
+        latency.put("p50", snapshot.getValueAtPercentile(50) / 1000.0);
+        latency.put("p90", snapshot.getValueAtPercentile(90) / 1000.0);
+        latency.put("p99", snapshot.getValueAtPercentile(99) / 1000.0);
+        latency.put("p99.9", snapshot.getValueAtPercentile(99.9) / 1000.0);
+        latency.put("max", snapshot.getMaxValue() / 1000.0);
+
+        Map<String, Object> outcomes = new LinkedHashMap<>();
+        outcomes.put("success", success.sum());
+        outcomes.put("clientErrors", clientErrors.sum());
+        outcomes.put("serverErrors", serverErrors.sum());
+        outcomes.put("failures", failures.sum());
+        outcomes.put("dropped", dropped.sum());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requests", snapshot.getTotalCount());
+        // Ответы с любым статусом в секунду и только успешные (2xx) - goodput
+        report.put("throughputPerSecond", completed() / measuredSeconds);
+        report.put("goodputPerSecond", succeeded() / measuredSeconds);
+        report.put("outcomes", outcomes);
+        report.put("latencyMillis", latency);
+        report.put("histogram", encodedHistogram(snapshot));
+        return report;
+    }
+
+    private static String encodedHistogram(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        byte[] bytes = new byte[length];
+        buffer.flip();
+        buffer.get(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+}
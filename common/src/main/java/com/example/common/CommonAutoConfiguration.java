@@ -0,0 +1,18 @@
+package com.example.common;
+
+import com.example.common.logging.LoggingMetrics;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+
+// Бины общего модуля: пакет com.example.common не попадает в сканирование компонентов сервисов,
+// поэтому подключаются через META-INF/spring/...AutoConfiguration.imports
+@AutoConfiguration
+public class CommonAutoConfiguration {
+
+    @Bean
+    @ConditionalOnClass(name = "ch.qos.logback.classic.LoggerContext")
+    public LoggingMetrics loggingMetrics() {
+        return new LoggingMetrics();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.common.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+
+// Метрики асинхронного журнала: заполненность буфера и число отброшенных событий по уровням
+// (logging.events.dropped{level}). Рост счетчика означает, что вывод не успевает за потоком событий.
+// Регистрируется автоконфигурацией CommonAutoConfiguration в каждом сервисе
+public class LoggingMetrics implements MeterBinder {
+
+    private static final Level[] LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR};
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext context)) {
+            return;
+        }
+        Iterator<Appender<ILoggingEvent>> appenders = context.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders();
+        while (appenders.hasNext()) {
+            if (appenders.next() instanceof RingBufferAppender appender) {
+                bind(registry, appender);
+            }
+        }
+    }
+
+    private static void bind(MeterRegistry registry, RingBufferAppender appender) {
+        Gauge.builder("logging.queue.size", appender, RingBufferAppender::getQueueDepth)
+                .tag("appender", appender.getName())
+                .description("Log events waiting for the background writer")
+                .register(registry);
+        Gauge.builder("logging.queue.capacity", appender, RingBufferAppender::getQueueSize)
+                .tag("appender", appender.getName())
+                .register(registry);
+        for (Level level : LEVELS) {
+            FunctionCounter.builder("logging.events.dropped", appender, a -> a.getDroppedCount(level))
+                    .tag("appender", appender.getName())
+                    .tag("level", level.levelStr.toLowerCase())
+                    .description("Log events dropped because the buffer was full")
+                    .register(registry);
+        }
+    }
+}
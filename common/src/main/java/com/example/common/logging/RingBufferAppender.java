@@ -0,0 +1,201 @@
+package com.example.common.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Асинхронный appender для Logback: поток запроса только кладет событие в ограниченный кольцевой буфер,
+// а вывод (консоль и т.п.) делает отдельный фоновый поток. Если буфер заполнен, событие отбрасывается
+// и учитывается в счетчике своего уровня - поток запроса никогда не ждет вывода.
+// Подключается в logback-spring.xml, вложенные appender-ref - куда писать на самом деле
+public class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent> {
+
+    // Сколько событий фоновый поток забирает из буфера за один проход
+    private static final int DRAIN_BATCH_SIZE = 256;
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    // Отброшенные события по уровням: TRACE, DEBUG, INFO, WARN, ERROR
+    private final LongAdder[] dropped = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+    // Отброшено с момента последнего предупреждения в журнал
+    private final AtomicLong droppedSinceReport = new AtomicLong();
+
+    private int queueSize = 8192;
+    private long maxFlushTime = 1000;
+    private ArrayBlockingQueue<ILoggingEvent> queue;
+    private Thread writer;
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (queueSize < 1) {
+            addError("Invalid queueSize " + queueSize);
+            return;
+        }
+        if (!appenders.iteratorForAppenders().hasNext()) {
+            addError("No appender-ref configured for " + getName());
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        writer = new Thread(this::drainLoop, "log-writer-" + getName());
+        writer.setDaemon(true);
+        super.start();
+        writer.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        // Даем фоновому потоку дописать то, что уже в буфере
+        writer.interrupt();
+        try {
+            writer.join(maxFlushTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            addWarn("Log writer did not finish in " + maxFlushTime + " ms, " + queue.size() + " events discarded");
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        // Сообщение и MDC фиксируются в потоке запроса: аргументы (например, Product) могут измениться
+        // до того, как фоновый поток дойдет до события. Уровень уже проверен логгером, так что
+        // для выключенных уровней сюда не попадаем и сообщение не собирается вовсе
+        event.prepareForDeferredProcessing();
+        if (!queue.offer(event)) {
+            dropped[levelIndex(event.getLevel())].increment();
+            droppedSinceReport.incrementAndGet();
+        }
+    }
+
+    private void drainLoop() {
+        List<ILoggingEvent> batch = new ArrayList<>(DRAIN_BATCH_SIZE);
+        while (isStarted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, DRAIN_BATCH_SIZE - 1);
+            write(batch);
+        }
+        // Остановка: дописываем остаток буфера
+        queue.drainTo(batch);
+        write(batch);
+    }
+
+    private void write(List<ILoggingEvent> batch) {
+        for (ILoggingEvent event : batch) {
+            appenders.appendLoopOnAppenders(event);
+        }
+        batch.clear();
+        reportDropped();
+    }
+
+    // Раз в проход сообщаем в тот же вывод, сколько событий было потеряно
+    private void reportDropped() {
+        long count = droppedSinceReport.getAndSet(0);
+        if (count == 0) {
+            return;
+        }
+        LoggingEvent warning = new LoggingEvent(RingBufferAppender.class.getName(),
+                ((LoggerContext) getContext()).getLogger(RingBufferAppender.class), Level.WARN,
+                "Log buffer overflow: dropped {} events", null, new Object[]{count});
+        warning.prepareForDeferredProcessing();
+        appenders.appendLoopOnAppenders(warning);
+    }
+
+    private static int levelIndex(Level level) {
+        return switch (level.toInt()) {
+            case Level.TRACE_INT -> 0;
+            case Level.DEBUG_INT -> 1;
+            case Level.INFO_INT -> 2;
+            case Level.WARN_INT -> 3;
+            default -> 4;
+        };
+    }
+
+    // --- Состояние для метрик (LoggingMetrics) ---
+
+    public long getDroppedCount(Level level) {
+        return dropped[levelIndex(level)].sum();
+    }
+
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    // --- Настройки из logback-spring.xml ---
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public long getMaxFlushTime() {
+        return maxFlushTime;
+    }
+
+    public void setMaxFlushTime(long maxFlushTime) {
+        this.maxFlushTime = maxFlushTime;
+    }
+
+    // --- AppenderAttachable ---
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> appender) {
+        appenders.addAppender(appender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.common.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Идентификатор запроса X-Request-Id: api-gateway принимает его от клиента (или создает) и передает
+// в core-service, оба кладут его в MDC - и тем самым в каждую строку журнала запроса
+public final class RequestIds {
+
+    public static final String HEADER = "X-Request-Id";
+    public static final String MDC_KEY = "requestId";
+    // Чужой ID принимаем, только если он похож на идентификатор: он попадает в журнал как есть
+    private static final int MAX_LENGTH = 64;
+
+    private RequestIds() {
+    }
+
+    // Пришедший ID, если он допустим, иначе новый случайный
+    public static String accept(String incoming) {
+        if (incoming != null && !incoming.isEmpty() && incoming.length() <= MAX_LENGTH
+                && incoming.chars().allMatch(c -> c == '-' || c == '_' || c == '.' || Character.isLetterOrDigit(c) && c < 128)) {
+            return incoming;
+        }
+        return Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.common.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.AppenderBase;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferAppenderTests {
+
+	@Test
+	void dropsAndCountsEventsWhileWriterIsStalled() throws InterruptedException {
+		LoggerContext context = new LoggerContext();
+		context.setMDCAdapter(new LogbackMDCAdapter());
+		CountDownLatch writerBlocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> written = new CopyOnWriteArrayList<>();
+		// Вывод, который "зависает" на первом событии - как медленная консоль
+		AppenderBase<ILoggingEvent> slowOutput = new AppenderBase<>() {
+			@Override
+			protected void append(ILoggingEvent event) {
+				writerBlocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				written.add(event.getFormattedMessage());
+			}
+		};
+		slowOutput.setContext(context);
+		slowOutput.start();
+
+		RingBufferAppender appender = new RingBufferAppender();
+		appender.setContext(context);
+		appender.setName("ASYNC");
+		appender.setQueueSize(4);
+		appender.addAppender(slowOutput);
+		appender.start();
+
+		Logger logger = context.getLogger("test");
+		logger.setAdditive(false);
+		logger.addAppender(appender);
+		logger.setLevel(Level.INFO);
+
+		logger.info("first {}", 0);
+		assertTrue(writerBlocked.await(5, TimeUnit.SECONDS));
+		// Писатель занят первым событием: 4 события помещаются в буфер, остальные 6 отбрасываются без ожидания
+		for (int i = 1; i <= 10; i++) {
+			logger.info("event {}", i);
+		}
+		logger.debug("disabled level, never queued");
+		assertEquals(6, appender.getDroppedCount(Level.INFO));
+		assertEquals(0, appender.getDroppedCount(Level.DEBUG));
+
+		release.countDown();
+		appender.stop();
+		// Предупреждение о потерях пишется сразу после пакета, во время вывода которого они случились
+		assertEquals(List.of("first 0", "Log buffer overflow: dropped 6 events",
+				"event 1", "event 2", "event 3", "event 4"), written);
+	}
+}
@@ -0,0 +1,38 @@
+package com.example.coreservice.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+@Configuration // Режим выполнения запросов: пул платформенных потоков Tomcat или виртуальные потоки
+public class ExecutionModeConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionModeConfig.class);
+
+    // Переключение делает Spring Boot по spring.threads.virtual.enabled: на Java 21+ Tomcat и асинхронные
+    // ответы (StreamingResponseBody) получают по виртуальному потоку на запрос. На более старой JVM свойство
+    // молча игнорируется, поэтому при старте сообщаем, какой режим на самом деле включен
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> executionModeReporter(
+            Environment environment,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualRequested,
+            @Value("${server.tomcat.threads.max:200}") int maxThreads) {
+        return event -> {
+            if (Threading.VIRTUAL.isActive(environment)) {
+                logger.info("Requests run on virtual threads");
+                return;
+            }
+            if (virtualRequested) {
+                logger.warn("spring.threads.virtual.enabled=true needs Java 21+, running on Java {} with platform threads",
+                        Runtime.version().feature());
+            }
+            logger.info("Requests run on platform threads (Tomcat pool of {})", maxThreads);
+        };
+    }
+}
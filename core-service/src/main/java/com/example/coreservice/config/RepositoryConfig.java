@@ -0,0 +1,76 @@
+package com.example.coreservice.config;
+
+import com.example.coreservice.repository.CompactProductRepository;
+import com.example.coreservice.repository.IdAllocator;
+import com.example.coreservice.repository.InMemoryProductRepository;
+import com.example.coreservice.repository.IndexedProductRepository;
+import com.example.coreservice.repository.MeteredProductRepository;
+import com.example.coreservice.repository.ObservableProductRepository;
+import com.example.coreservice.repository.PersistentProductRepository;
+import com.example.coreservice.repository.ProductRepository;
+import com.example.coreservice.repository.feed.ProductChangeFeed;
+import com.example.coreservice.repository.wal.FsyncPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration // Сборка ProductRepository: реализация хранилища + обертки над ней
+public class RepositoryConfig {
+
+    // Шард каталога: ID этого экземпляра выдаются только из его блоков (см. IdAllocator).
+    // По умолчанию шард один и ID идут подряд с 1
+    @Bean
+    public IdAllocator idAllocator(@Value("${core.shard.index:0}") int shardIndex,
+                                   @Value("${core.shard.count:1}") int shardCount,
+                                   @Value("${core.shard.id-block-size:" + IdAllocator.DEFAULT_BLOCK_SIZE + "}") long blockSize) {
+        return new IdAllocator(shardIndex, shardCount, blockSize);
+    }
+
+    // Реализация выбирается свойством core.repository.type:
+    // memory (по умолчанию) - InMemoryProductRepository,
+    // compact - примитивные массивы и UTF-8 арена вместо объекта на каждый продукт,
+    // persistent - данные переживают перезапуск (журнал + снимки на диске).
+    // Все изменения проходят через ObservableProductRepository, при core.search.indexes.enabled - с индексами поиска
+    @Bean(destroyMethod = "close")
+    public ObservableProductRepository observableProductRepository(
+            @Value("${core.repository.type:memory}") String type,
+            @Value("${core.search.indexes.enabled:true}") boolean indexesEnabled,
+            @Value("${core.repository.persistent.directory:data}") Path directory,
+            @Value("${core.repository.persistent.fsync:interval}") String fsyncPolicy,
+            @Value("${core.repository.persistent.fsync-interval:100ms}") Duration fsyncInterval,
+            @Value("${core.repository.persistent.segment-size:64MB}") DataSize segmentSize,
+            @Value("${core.repository.persistent.snapshot-interval:5m}") Duration snapshotInterval,
+            IdAllocator idAllocator) {
+        ProductRepository store = switch (type) {
+            case "memory" -> new InMemoryProductRepository(idAllocator);
+            case "compact" -> new CompactProductRepository(idAllocator);
+            case "persistent" -> new PersistentProductRepository(directory, FsyncPolicy.valueOf(fsyncPolicy.toUpperCase()),
+                    fsyncInterval, Math.toIntExact(segmentSize.toBytes()), snapshotInterval, idAllocator);
+            default -> throw new IllegalArgumentException("Unknown core.repository.type: " + type);
+        };
+        return indexesEnabled ? new IndexedProductRepository(store) : new ObservableProductRepository(store);
+    }
+
+    // Хранилище, которое получают контроллеры: каждая операция проходит через таймеры core.repository.operations
+    @Bean
+    @Primary
+    public ProductRepository productRepository(ObservableProductRepository observableProductRepository,
+                                               MeterRegistry meterRegistry) {
+        return new MeteredProductRepository(observableProductRepository, meterRegistry);
+    }
+
+    // Лента изменений для GET /products/changes (реплики каталога в api-gateway)
+    @Bean
+    public ProductChangeFeed productChangeFeed(ObservableProductRepository observableProductRepository,
+                                               @Value("${core.changes.buffer-size:65536}") int bufferSize) {
+        ProductChangeFeed feed = new ProductChangeFeed(bufferSize);
+        observableProductRepository.addListener(feed);
+        return feed;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.coreservice.controller;
+
+import com.example.coreservice.repository.feed.ProductChange;
+import com.example.coreservice.repository.feed.ProductChangeFeed;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Лента изменений каталога - GET /products/changes?after={seq}&epoch={epoch}, ответ в NDJSON.
+// Подписчик (api-gateway) сначала берет снимок GET /products - в заголовках X-Change-Sequence и X-Change-Epoch
+// номер ленты на момент снимка, - а затем читает ленту с этого номера. Изменения, попавшие в снимок,
+// придут и в ленте: применение состояния продукта повторно ничего не меняет
+@RestController
+public class ProductChangeController {
+
+    public static final String SEQUENCE_HEADER = "X-Change-Sequence";
+    public static final String EPOCH_HEADER = "X-Change-Epoch";
+
+    // Сколько изменений отправляем одной порцией (один flush)
+    private static final int BATCH_SIZE = 512;
+
+    private final ProductChangeFeed feed;
+    private final ObjectWriter changeWriter;
+    private final long heartbeatMillis;
+    private final long streamNanos;
+
+    public ProductChangeController(ProductChangeFeed feed, ObjectMapper objectMapper,
+                                   @Value("${core.changes.heartbeat-interval:5s}") Duration heartbeatInterval,
+                                   @Value("${core.changes.stream-duration:20s}") Duration streamDuration) {
+        this.feed = feed;
+        this.changeWriter = objectMapper.writerFor(ProductChange.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.heartbeatMillis = heartbeatInterval.toMillis();
+        this.streamNanos = streamDuration.toNanos();
+    }
+
+    // 410 Gone - продолжить с after нельзя (другой epoch или изменения уже вытеснены из буфера),
+    // подписчику нужен новый снимок
+    @GetMapping(value = "/products/changes", produces = ProductController.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> changes(@RequestParam long after,
+                                                         @RequestParam(required = false) String epoch) {
+        if ((epoch != null && !epoch.equals(feed.epoch())) || !feed.canResumeAfter(after)) {
+            return ResponseEntity.status(HttpStatus.GONE).header(EPOCH_HEADER, feed.epoch()).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(ProductController.APPLICATION_NDJSON_VALUE))
+                .header(EPOCH_HEADER, feed.epoch())
+                .body(out -> stream(out, after));
+    }
+
+    // Поток заканчивается через core.changes.stream-duration (меньше таймаута асинхронного запроса),
+    // подписчик сразу переподключается с последнего полученного номера
+    private void stream(OutputStream out, long after) throws IOException {
+        long deadline = System.nanoTime() + streamNanos;
+        long cursor = after;
+        try (JsonGenerator generator = changeWriter.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            while (System.nanoTime() < deadline) {
+                List<ProductChange> changes = feed.read(cursor, BATCH_SIZE, heartbeatMillis, TimeUnit.MILLISECONDS);
+                if (changes == null) {
+                    // Подписчик отстал больше, чем на размер буфера
+                    write(generator, ProductChange.reset(cursor));
+                    break;
+                }
+                if (changes.isEmpty()) {
+                    write(generator, ProductChange.heartbeat(cursor));
+                }
+                for (ProductChange change : changes) {
+                    write(generator, change);
+                    cursor = change.seq();
+                }
+                generator.flush();
+            }
+        } catch (InterruptedException e) {
+            // Остановка сервиса
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(JsonGenerator generator, ProductChange change) throws IOException {
+        changeWriter.writeValue(generator, change);
+        generator.writeRaw('\n');
+    }
+}
@@ -2,11 +2,23 @@ package com.example.coreservice.controller;
 
 import com.example.coreservice.model.Product ;
 import com.example.coreservice.repository.ProductRepository ;
+import com.example.coreservice.repository.ProductVersionConflictException;
+import com.example.coreservice.repository.feed.ProductChangeFeed;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,12 +26,30 @@ import java.util.Optional;
 @RequestMapping("/products") // Базовый путь для всех эндпоинтов в этом контроллере
 public class ProductController {
 
+    // Тип содержимого для построчного JSON (один продукт на строку)
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    // Верхняя граница для ?limit=
+    static final int MAX_PAGE_SIZE = 1000;
+    // Размер выдачи поиска по умолчанию
+    static final int DEFAULT_SEARCH_LIMIT = 100;
+    // Верхняя граница количества элементов в одном пакетном запросе
+    static final int MAX_BATCH_SIZE = 10_000;
+    // Сколько продуктов читаем из хранилища за один шаг при потоковой выдаче
+    static final int STREAM_CHUNK_SIZE = 256;
+
     private final ProductRepository productRepository;
+    private final ProductChangeFeed changeFeed;
+    private final ObjectWriter productWriter;
 
     // Внедряем зависимость ProductRepository через конструктор
     @Autowired
-    public ProductController(ProductRepository productRepository) {
+    public ProductController(ProductRepository productRepository, ProductChangeFeed changeFeed, ObjectMapper objectMapper) {
         this.productRepository = productRepository;
+        this.changeFeed = changeFeed;
+        // Сбрасываем буфер сами после каждой порции, а не после каждого продукта
+        this.productWriter = objectMapper.writerFor(Product.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     // Create (Создание) - POST /products
@@ -28,36 +58,159 @@ public class ProductController {
         // @RequestBody говорит Spring взять тело запроса и преобразовать его в объект Product
         Product savedProduct = productRepository.save(product);
         // Возвращаем созданный продукт и статус 201 Created
-        return new ResponseEntity<>(savedProduct, HttpStatus.CREATED);
+        return ResponseEntity.status(HttpStatus.CREATED).eTag(productETag(savedProduct)).body(savedProduct);
+    }
+
+    // Create (Пакетное создание) - POST /products/batch
+    @PostMapping("/batch")
+    public ResponseEntity<List<Product>> createProducts(@RequestBody List<Product> products) {
+        if (products.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        return new ResponseEntity<>(productRepository.saveAll(products), HttpStatus.CREATED);
     }
 
     // Read (Получение всех) - GET /products
-    @GetMapping
-    public ResponseEntity<List<Product>> getAllProducts() {
-        List<Product> products = productRepository.findAll();
-        // Возвращаем список продуктов и статус 200 OK
-        return ResponseEntity.ok(products);
+    // Массив пишется в ответ по мере обхода хранилища, а не собирается целиком в памяти.
+    // Номер ленты изменений берется до обхода: все, что изменится во время выдачи, есть в ленте после него.
+    // Он же служит ETag списка: пока лента стоит на месте, каталог не менялся, и на If-None-Match
+    // отвечаем 304 без обхода хранилища
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getAllProducts(@RequestParam(required = false) Long after,
+                                                                WebRequest request) {
+        long sequence = changeFeed.lastSequence();
+        if (request.checkNotModified(listETag(sequence, false))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(ProductChangeController.SEQUENCE_HEADER, String.valueOf(sequence))
+                .header(ProductChangeController.EPOCH_HEADER, changeFeed.epoch())
+                .body(out -> writeProducts(out, after, false));
+    }
+
+    // Read (Потоковая выдача в NDJSON) - GET /products, Accept: application/x-ndjson
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllProducts(@RequestParam(required = false) Long after,
+                                                                   WebRequest request) {
+        long sequence = changeFeed.lastSequence();
+        if (request.checkNotModified(listETag(sequence, true))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .header(ProductChangeController.SEQUENCE_HEADER, String.valueOf(sequence))
+                .header(ProductChangeController.EPOCH_HEADER, changeFeed.epoch())
+                .body(out -> writeProducts(out, after, true));
+    }
+
+    // Read (Страница по курсору) - GET /products?after={id}&limit={n}
+    // В заголовке X-Next-Cursor возвращаем курсор следующей страницы, если она может существовать
+    @GetMapping(params = "limit")
+    public ResponseEntity<List<Product>> getProductPage(@RequestParam(required = false) Long after,
+                                                        @RequestParam int limit, WebRequest request) {
+        if (limit <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (request.checkNotModified(listETag(changeFeed.lastSequence(), false))) {
+            return null;
+        }
+        List<Product> page = productRepository.findPage(after, Math.min(limit, MAX_PAGE_SIZE));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == Math.min(limit, MAX_PAGE_SIZE)) {
+            response.header("X-Next-Cursor", String.valueOf(page.get(page.size() - 1).getId()));
+        }
+        return response.body(page);
+    }
+
+    // Read (Пакетное получение) - GET /products?ids=1,2,3
+    // Эпоха в заголовке нужна шлюзу: из нее и версии он строит ETag продукта так же, как GET /products/{id}
+    @GetMapping(params = "ids")
+    public ResponseEntity<List<Product>> getProductsByIds(@RequestParam List<Long> ids, WebRequest request) {
+        if (ids.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (request.checkNotModified(listETag(changeFeed.lastSequence(), false))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .header(ProductChangeController.EPOCH_HEADER, changeFeed.epoch())
+                .body(productRepository.findAllById(ids));
+    }
+
+    // Search (Поиск по цене) - GET /products/search/price?min=&max=&order=asc|desc&limit=
+    @GetMapping("/search/price")
+    public ResponseEntity<List<Product>> searchByPrice(@RequestParam(defaultValue = "0") double min,
+                                                       @RequestParam(defaultValue = "" + Double.MAX_VALUE) double max,
+                                                       @RequestParam(defaultValue = "asc") String order,
+                                                       @RequestParam(defaultValue = "" + DEFAULT_SEARCH_LIMIT) int limit) {
+        // NaN не сравнивается ни с чем, поэтому границы проверяются на конечность отдельно
+        if (!Double.isFinite(min) || !Double.isFinite(max) || min > max || limit <= 0
+                || !("asc".equals(order) || "desc".equals(order))) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(productRepository.findByPriceBetween(min, max, "desc".equals(order), Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    // Search (Поиск по началу имени, без учета регистра) - GET /products/search/name?prefix=&limit=
+    @GetMapping(value = "/search/name", params = "prefix")
+    public ResponseEntity<List<Product>> searchByNamePrefix(@RequestParam String prefix,
+                                                            @RequestParam(defaultValue = "" + DEFAULT_SEARCH_LIMIT) int limit) {
+        if (prefix.isEmpty() || limit <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(productRepository.findByNamePrefix(prefix, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    // Search (Поиск по подстроке имени, без учета регистра) - GET /products/search/name?contains=&limit=
+    @GetMapping(value = "/search/name", params = "contains")
+    public ResponseEntity<List<Product>> searchByNameFragment(@RequestParam String contains,
+                                                              @RequestParam(defaultValue = "" + DEFAULT_SEARCH_LIMIT) int limit) {
+        if (contains.isEmpty() || limit <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(productRepository.findByNameContaining(contains, Math.min(limit, MAX_PAGE_SIZE)));
     }
 
     // Read (Получение одного по ID) - GET /products/{id}
+    // ETag - эпоха и версия продукта; If-None-Match с тем же ETag Spring сам превращает в 304 без тела
     @GetMapping("/{id}")
     public ResponseEntity<Product> getProductById(@PathVariable Long id) {
         // @PathVariable говорит Spring взять значение {id} из пути запроса
         Optional<Product> productOptional = productRepository.findById(id);
         // Если продукт найден, возвращаем его и статус 200 OK
         // Если не найден, возвращаем статус 404 Not Found
-        return productOptional.map(ResponseEntity::ok)
+        return productOptional.map(product -> ResponseEntity.ok()
+                        .eTag(productETag(product))
+                        .header(ProductChangeController.EPOCH_HEADER, changeFeed.epoch())
+                        .body(product))
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     // Update (Обновление) - PUT /products/{id}
+    // С заголовком If-Match: "<эпоха>-<версия>" обновление условное: если продукт уже изменили, отвечаем 412
+    // и текущим ETag, а клиент перечитывает продукт и повторяет попытку
     @PutMapping("/{id}")
-    public ResponseEntity<Product> updateProduct(@PathVariable Long id, @RequestBody Product productDetails) {
-        Optional<Product> updatedProductOptional = productRepository.update(id, productDetails);
+    public ResponseEntity<Product> updateProduct(@PathVariable Long id, @RequestBody Product productDetails,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        long expectedVersion = ProductRepository.ANY_VERSION;
+        if (ifMatch != null && !"*".equals(ifMatch.trim())) {
+            expectedVersion = parseVersion(ifMatch);
+            if (expectedVersion < 0) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+        }
+        Optional<Product> updatedProductOptional;
+        try {
+            updatedProductOptional = productRepository.update(id, productDetails, expectedVersion);
+        } catch (ProductVersionConflictException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).eTag(versionETag(e.getCurrentVersion())).build();
+        }
         // Если продукт обновлен, возвращаем его и статус 200 OK
         // Если продукт с таким ID не найден для обновления, возвращаем 404 Not Found
-        return updatedProductOptional.map(ResponseEntity::ok)
-                .orElseGet(() -> ResponseEntity.notFound().build());
+        // (при If-Match - 412: условие не может выполниться для отсутствующего продукта)
+        return updatedProductOptional.map(product -> ResponseEntity.ok().eTag(productETag(product)).body(product))
+                .orElseGet(() -> ResponseEntity.status(ifMatch == null ? HttpStatus.NOT_FOUND : HttpStatus.PRECONDITION_FAILED).build());
     }
 
     // Delete (Удаление) - DELETE /products/{id}
@@ -72,4 +225,76 @@ public class ProductController {
             return ResponseEntity.notFound().build();
         }
     }
+
+    // Delete (Пакетное удаление) - DELETE /products/batch, тело - список ID
+    // Возвращаем 200 OK и список ID, которые действительно были удалены
+    @DeleteMapping("/batch")
+    public ResponseEntity<List<Long>> deleteProducts(@RequestBody List<Long> ids) {
+        if (ids.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(productRepository.deleteAllById(ids));
+    }
+
+    private String productETag(Product product) {
+        return versionETag(product.getVersion());
+    }
+
+    // ETag продукта: эпоха ленты изменений и версия. Хранилище в памяти после перезапуска снова нумерует
+    // ID и версии с 1, и одна версия без эпохи дала бы 304 или успешный If-Match по ETag прежнего запуска
+    private String versionETag(long version) {
+        return "\"" + changeFeed.epoch() + "-" + version + "\"";
+    }
+
+    // ETag списков: эпоха и номер ленты изменений плюс формат ответа, так что JSON и NDJSON
+    // одного состояния каталога не подменяют друг друга в кэшах
+    private String listETag(long sequence, boolean ndjson) {
+        return "\"" + changeFeed.epoch() + "-" + sequence + (ndjson ? "-ndjson" : "") + "\"";
+    }
+
+    // Версия из If-Match: "<эпоха>-<версия>". Слабые и несколько ETag не поддерживаются (If-Match сравнивает строго),
+    // для них, для ETag другой эпохи и для мусора возвращаем -1 - такое условие не выполняется
+    private long parseVersion(String ifMatch) {
+        String tag = ifMatch.trim();
+        String prefix = "\"" + changeFeed.epoch() + "-";
+        if (tag.length() <= prefix.length() + 1 || !tag.startsWith(prefix) || tag.charAt(tag.length() - 1) != '"') {
+            return -1;
+        }
+        try {
+            return Long.parseLong(tag.substring(prefix.length(), tag.length() - 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Обходит хранилище порциями по STREAM_CHUNK_SIZE и сразу пишет их в ответ:
+    // в памяти одновременно находится только одна порция, независимо от размера каталога
+    private void writeProducts(OutputStream out, Long after, boolean ndjson) throws IOException {
+        try (JsonGenerator generator = productWriter.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Разделитель между корневыми значениями пишем сами (перевод строки в NDJSON)
+            generator.setRootValueSeparator(null);
+            if (!ndjson) {
+                generator.writeStartArray();
+            }
+            Long cursor = after;
+            List<Product> chunk;
+            do {
+                chunk = productRepository.findPage(cursor, STREAM_CHUNK_SIZE);
+                for (Product product : chunk) {
+                    productWriter.writeValue(generator, product);
+                    if (ndjson) {
+                        generator.writeRaw('\n');
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    cursor = chunk.get(chunk.size() - 1).getId();
+                }
+                generator.flush();
+            } while (chunk.size() == STREAM_CHUNK_SIZE);
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        }
+    }
 }
@@ -0,0 +1,77 @@
+package com.example.coreservice.metrics;
+
+import com.example.common.tracing.RequestIds;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Идентификатор запроса и число запросов в обработке.
+// ID приходит от api-gateway в X-Request-Id (или создается здесь), попадает в MDC - и тем самым в каждую
+// строку журнала этого запроса - и возвращается клиенту в том же заголовке
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestTracingFilter extends OncePerRequestFilter {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public RequestTracingFilter(MeterRegistry meterRegistry) {
+        Gauge.builder("core.requests.in_flight", inFlight, AtomicInteger::get)
+                .description("HTTP requests being processed, including streaming responses")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String requestId = RequestIds.accept(request.getHeader(RequestIds.HEADER));
+        response.setHeader(RequestIds.HEADER, requestId);
+        MDC.put(RequestIds.MDC_KEY, requestId);
+        inFlight.incrementAndGet();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            MDC.remove(RequestIds.MDC_KEY);
+            // Потоковый ответ дописывается уже после выхода из фильтра - считаем его до конца асинхронной обработки
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new CompletionListener());
+            } else {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private final class CompletionListener implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            inFlight.decrementAndGet();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        // Новый цикл асинхронной обработки (например, Mono, а затем StreamingResponseBody): слушателя нужно добавить заново
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -8,6 +8,8 @@ public class Product {
     private Long id;
     private String name;
     private double price;
+    // Версия состояния: назначается хранилищем (1 при создании, +1 при каждом обновлении), клиентом не задается
+    private long version;
 
     // 1. Конструктор без аргументов (нужен для некоторых фреймворков)
     public Product() {
@@ -20,6 +22,11 @@ public class Product {
         this.price = price;
     }
 
+    public Product(Long id, String name, double price, long version) {
+        this(id, name, price);
+        this.version = version;
+    }
+
     // 3. Геттеры (методы для получения значений полей)
     public Long getId() {
         return id;
@@ -33,6 +40,10 @@ public class Product {
         return price;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     // 4. Сеттеры (методы для установки значений полей) - ВОТ ОНИ!
     public void setId(Long id) {
         this.id = id;
@@ -46,6 +57,10 @@ public class Product {
         this.price = price;
     }
 
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     // 5. equals() и hashCode() (важны для сравнения объектов, например, в коллекциях)
     @Override
     public boolean equals(Object o) {
@@ -53,13 +68,14 @@ public class Product {
         if (o == null || getClass() != o.getClass()) return false;
         Product product = (Product) o;
         return Double.compare(product.price, price) == 0 &&
+                version == product.version &&
                 Objects.equals(id, product.id) &&
                 Objects.equals(name, product.name);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, name, price);
+        return Objects.hash(id, name, price, version);
     }
 
     // 6. toString() (полезен для вывода информации об объекте в лог)
@@ -69,6 +85,7 @@ public class Product {
                 "id=" + id +
                 ", name='" + name + '\'' +
                 ", price=" + price +
+                ", version=" + version +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,283 @@
+package com.example.coreservice.repository;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.compact.ByteArena;
+import com.example.coreservice.repository.compact.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Компактное хранилище для очень больших каталогов: вместо объектов Product, Long и String на каждый продукт
+// данные лежат в параллельных примитивных массивах (слотах), имена - в UTF-8 арене, а индекс ID -> слот -
+// хеш-таблица с открытой адресацией. Объекты Product создаются только при выдаче наружу.
+//
+// ID выдаются по возрастанию и слоты заполняются в том же порядке, поэтому массив ids отсортирован
+// и страница по курсору ищется двоичным поиском. Удаленные слоты освобождаются при компактировании.
+public class CompactProductRepository implements ProductRepository {
+
+    // Отметка удаленного слота в массиве ссылок на имена
+    private static final long DELETED = -2;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Минимум удаленных слотов, ради которого стоит компактировать
+    private static final int MIN_SLOTS_TO_COMPACT = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
+    private final ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
+
+    // Поля ниже защищены lock
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private double[] prices = new double[INITIAL_CAPACITY];
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private long[] nameRefs = new long[INITIAL_CAPACITY];
+    private int slotCount;
+    private int deletedCount;
+    private ByteArena names = new ByteArena();
+    private final LongIntHashMap slotById = new LongIntHashMap(INITIAL_CAPACITY);
+    private final IdAllocator idAllocator;
+
+    public CompactProductRepository() {
+        this(IdAllocator.single());
+    }
+
+    public CompactProductRepository(IdAllocator idAllocator) {
+        this.idAllocator = idAllocator;
+    }
+
+    @Override
+    public Product save(Product product) {
+        writeLock.lock();
+        try {
+            product.setId(idAllocator.next());
+            product.setVersion(1);
+            append(product);
+        } finally {
+            writeLock.unlock();
+        }
+        return product;
+    }
+
+    @Override
+    public Optional<Product> findById(Long id) {
+        readLock.lock();
+        try {
+            int slot = slotById.get(id);
+            return slot < 0 ? Optional.empty() : Optional.of(materialize(slot));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Product> findAll() {
+        readLock.lock();
+        try {
+            List<Product> products = new ArrayList<>(slotCount - deletedCount);
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (nameRefs[slot] != DELETED) {
+                    products.add(materialize(slot));
+                }
+            }
+            return products;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Product> findPage(Long after, int limit) {
+        readLock.lock();
+        try {
+            List<Product> page = new ArrayList<>(Math.min(limit, 1024));
+            int slot = after == null ? 0 : firstSlotAfter(after);
+            for (; slot < slotCount && page.size() < limit; slot++) {
+                if (nameRefs[slot] != DELETED) {
+                    page.add(materialize(slot));
+                }
+            }
+            return page;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Product> update(Long id, Product product, long expectedVersion) {
+        writeLock.lock();
+        try {
+            int slot = slotById.get(id);
+            if (slot < 0) {
+                return Optional.empty();
+            }
+            if (expectedVersion != ANY_VERSION && versions[slot] != expectedVersion) {
+                throw new ProductVersionConflictException(id, expectedVersion, versions[slot]);
+            }
+            product.setId(id);
+            product.setVersion(++versions[slot]);
+            names.release(nameRefs[slot]);
+            nameRefs[slot] = names.add(product.getName());
+            prices[slot] = product.getPrice();
+            compactIfNeeded();
+            return Optional.of(product);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        writeLock.lock();
+        try {
+            boolean removed = delete(id);
+            compactIfNeeded();
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        writeLock.lock();
+        try {
+            ensureCapacity(slotCount + products.size());
+            for (Product product : products) {
+                product.setId(idAllocator.next());
+                product.setVersion(1);
+                append(product);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return products;
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<Long> ids) {
+        List<Product> found = new ArrayList<>(ids.size());
+        readLock.lock();
+        try {
+            for (Long id : ids) {
+                int slot = slotById.get(id);
+                if (slot >= 0) {
+                    found.add(materialize(slot));
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return found;
+    }
+
+    @Override
+    public List<Long> deleteAllById(Collection<Long> ids) {
+        List<Long> deleted = new ArrayList<>(ids.size());
+        writeLock.lock();
+        try {
+            for (Long id : ids) {
+                if (delete(id)) {
+                    deleted.add(id);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            writeLock.unlock();
+        }
+        return deleted;
+    }
+
+    // Примерный объем памяти, занятый данными хранилища, в байтах
+    public long footprintBytes() {
+        readLock.lock();
+        try {
+            return (long) ids.length * (Long.BYTES + Double.BYTES + Long.BYTES + Long.BYTES)
+                    + slotById.footprintBytes() + names.footprintBytes();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Вызывается под writeLock
+    private void append(Product product) {
+        ensureCapacity(slotCount + 1);
+        int slot = slotCount++;
+        ids[slot] = product.getId();
+        prices[slot] = product.getPrice();
+        versions[slot] = product.getVersion();
+        nameRefs[slot] = names.add(product.getName());
+        slotById.put(product.getId(), slot);
+    }
+
+    // Вызывается под writeLock
+    private boolean delete(long id) {
+        int slot = slotById.remove(id);
+        if (slot < 0) {
+            return false;
+        }
+        names.release(nameRefs[slot]);
+        nameRefs[slot] = DELETED;
+        deletedCount++;
+        return true;
+    }
+
+    // Вызывается под блокировкой: первый слот с ID строго больше after (двоичный поиск)
+    private int firstSlotAfter(long after) {
+        int low = 0;
+        int high = slotCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] <= after) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Product materialize(int slot) {
+        return new Product(ids[slot], names.get(nameRefs[slot]), prices[slot], versions[slot]);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, newCapacity);
+        prices = Arrays.copyOf(prices, newCapacity);
+        versions = Arrays.copyOf(versions, newCapacity);
+        nameRefs = Arrays.copyOf(nameRefs, newCapacity);
+    }
+
+    // Вызывается под writeLock: убирает удаленные слоты (если их больше четверти) и мусор в арене имен.
+    // Операция O(n) и блокирует хранилище, но амортизируется на множество удалений/обновлений
+    private void compactIfNeeded() {
+        boolean slotsWasted = deletedCount >= MIN_SLOTS_TO_COMPACT && deletedCount > slotCount / 4;
+        boolean namesWasted = names.garbageBytes() > (1 << 20) && names.garbageBytes() > names.usedBytes() / 2;
+        if (!slotsWasted && !namesWasted) {
+            return;
+        }
+        int live = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (nameRefs[slot] != DELETED) {
+                ids[live] = ids[slot];
+                prices[live] = prices[slot];
+                versions[live] = versions[slot];
+                nameRefs[live] = nameRefs[slot];
+                live++;
+            }
+        }
+        slotCount = live;
+        deletedCount = 0;
+        names = names.compact(nameRefs, slotCount);
+        slotById.clear();
+        for (int slot = 0; slot < slotCount; slot++) {
+            slotById.put(ids[slot], slot);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.coreservice.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Выдача ID одним шардом каталога. Пространство ID поделено на блоки по blockSize подряд идущих ID,
+// блок b принадлежит шарду b % shardCount; шард выдает ID по возрастанию, заполняя свои блоки один за другим.
+// Владелец ID вычисляется по самому ID (shardOf) - так api-gateway находит шард без обращения к шардам.
+// При одном шарде ID идут подряд с 1, как без шардирования
+public final class IdAllocator {
+
+    public static final long DEFAULT_BLOCK_SIZE = 1024;
+
+    private final int shardIndex;
+    private final int shardCount;
+    private final long blockSize;
+    // Сколько ID шард уже выдал: номер последнего выданного среди ID этого шарда
+    private final AtomicLong allocated = new AtomicLong();
+
+    public IdAllocator(int shardIndex, int shardCount, long blockSize) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Invalid shard " + shardIndex + " of " + shardCount);
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("ID block size must be positive: " + blockSize);
+        }
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.blockSize = blockSize;
+    }
+
+    // Единственный шард: ID 1, 2, 3...
+    public static IdAllocator single() {
+        return new IdAllocator(0, 1, DEFAULT_BLOCK_SIZE);
+    }
+
+    public long next() {
+        return idOf(allocated.incrementAndGet());
+    }
+
+    // Резервирует count ID одной атомарной операцией; возвращает номер первого, ID - через idOf(первый + i)
+    public long reserve(int count) {
+        return allocated.getAndAdd(count) + 1;
+    }
+
+    // ID по номеру среди ID этого шарда (с 1)
+    public long idOf(long number) {
+        long ownBlock = (number - 1) / blockSize;
+        long block = ownBlock * shardCount + shardIndex;
+        return block * blockSize + (number - 1) % blockSize + 1;
+    }
+
+    // Последний выданный ID, 0 - еще ни одного
+    public long lastId() {
+        long number = allocated.get();
+        return number == 0 ? 0 : idOf(number);
+    }
+
+    // Гарантирует, что новые ID будут больше id (восстановление после перезапуска)
+    public void advancePast(long id) {
+        if (id < 1) {
+            return;
+        }
+        long block = (id - 1) / blockSize;
+        // Свои блоки до блока id целиком, плюс часть блока id, если он свой
+        long ownBlocksBefore = block > shardIndex ? (block - shardIndex - 1) / shardCount + 1 : 0;
+        long number = ownBlocksBefore * blockSize + (shardOf(id) == shardIndex ? (id - 1) % blockSize + 1 : 0);
+        allocated.accumulateAndGet(number, Math::max);
+    }
+
+    public int shardOf(long id) {
+        return (int) (((id - 1) / blockSize) % shardCount);
+    }
+
+    public int shardIndex() {
+        return shardIndex;
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+}
@@ -1,30 +1,45 @@
 package com.example.coreservice.repository;
 
 import com.example.coreservice.model.Product ;
-import org.springframework.stereotype.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.stream.Collectors;
 
-@Repository // Помечаем класс как компонент Spring для хранения данных
+// Хранилище продуктов в памяти (реализация по умолчанию, см. RepositoryConfig)
 public class InMemoryProductRepository implements ProductRepository {
 
-    // Потокобезопасная мапа для хранения продуктов <ID, Product>
-    private final Map<Long, Product> productStore = new ConcurrentHashMap<>();
-    // Потокобезопасный счетчик для генерации ID
-    private final AtomicLong idCounter = new AtomicLong(0);
+    // Журнал каждой записи - на уровне DEBUG: при выключенном уровне сообщение даже не собирается
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryProductRepository.class);
+
+    // Потокобезопасная упорядоченная по ID мапа для хранения продуктов <ID, Product>.
+    // Упорядоченность позволяет отдавать страницы по курсору (tailMap) без копирования всего хранилища
+    private final ConcurrentNavigableMap<Long, Product> productStore = new ConcurrentSkipListMap<>();
+    // Потокобезопасная выдача ID (при шардировании - только из блоков этого шарда)
+    private final IdAllocator ids;
+
+    public InMemoryProductRepository() {
+        this(IdAllocator.single());
+    }
+
+    public InMemoryProductRepository(IdAllocator ids) {
+        this.ids = ids;
+    }
 
     @Override
     public Product save(Product product) {
         // Генерируем новый ID
-        long newId = idCounter.incrementAndGet();
+        long newId = ids.next();
         product.setId(newId);
+        product.setVersion(1);
         productStore.put(newId, product);
-        System.out.println("Saved product: " + product); // Логирование для отладки
+        logger.debug("Saved product: {}", product);
         return product;
     }
 
@@ -39,14 +54,37 @@ public class InMemoryProductRepository implements ProductRepository {
     }
 
     @Override
-    public Optional<Product> update(Long id, Product product) {
-        // Проверяем, существует ли продукт с таким ID
-        return Optional.ofNullable(productStore.computeIfPresent(id, (key, existingProduct) -> {
-            // Обновляем только если продукт существует
-            product.setId(id); // Устанавливаем ID обновляемому объекту
-            System.out.println("Updating product: " + product); // Логирование
-            return product; // Возвращаем обновленный продукт
-        }));
+    public List<Product> findPage(Long after, int limit) {
+        // tailMap - это представление, а не копия: обходим только нужные limit элементов
+        ConcurrentNavigableMap<Long, Product> tail = after == null ? productStore : productStore.tailMap(after, false);
+        List<Product> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Product product : tail.values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(product);
+        }
+        return page;
+    }
+
+    @Override
+    public Optional<Product> update(Long id, Product product, long expectedVersion) {
+        // computeIfPresent у ConcurrentSkipListMap не блокирует ключ: функция считает новое значение,
+        // а замена проходит CAS-ом и при гонке повторяется с новым текущим продуктом. Поэтому функция
+        // может выполниться несколько раз и не должна иметь побочных эффектов: она строит новый объект,
+        // не трогая переданный, а конфликт версий бросает по тому значению, которое видит сама.
+        // Из двух конкурентных условных обновлений одной версии CAS пропустит только одно,
+        // второе при повторе увидит новую версию и получит конфликт
+        Product updated = productStore.computeIfPresent(id, (key, existingProduct) -> {
+            if (expectedVersion != ANY_VERSION && existingProduct.getVersion() != expectedVersion) {
+                throw new ProductVersionConflictException(id, expectedVersion, existingProduct.getVersion());
+            }
+            return new Product(id, product.getName(), product.getPrice(), existingProduct.getVersion() + 1);
+        });
+        if (updated != null) {
+            logger.debug("Updated product: {}", updated);
+        }
+        return Optional.ofNullable(updated);
     }
 
     @Override
@@ -54,8 +92,76 @@ public class InMemoryProductRepository implements ProductRepository {
         // Удаляем продукт и возвращаем true, если он был удален, иначе false
         boolean removed = productStore.remove(id) != null;
         if (removed) {
-            System.out.println("Deleted product with id: " + id); // Логирование
+            logger.debug("Deleted product with id: {}", id);
         }
         return removed;
     }
+
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        // Резервируем сразу все ID пакета одной атомарной операцией
+        long first = ids.reserve(products.size());
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            product.setId(ids.idOf(first + i));
+            product.setVersion(1);
+            productStore.put(product.getId(), product);
+        }
+        logger.debug("Saved {} products in batch", products.size());
+        return products;
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<Long> ids) {
+        List<Product> found = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Product product = productStore.get(id);
+            if (product != null) {
+                found.add(product);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public List<Long> deleteAllById(Collection<Long> ids) {
+        List<Long> deleted = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            if (productStore.remove(id) != null) {
+                deleted.add(id);
+            }
+        }
+        if (!deleted.isEmpty()) {
+            logger.debug("Deleted {} products in batch", deleted.size());
+        }
+        return deleted;
+    }
+
+    // --- Восстановление состояния (используется PersistentProductRepository) ---
+
+    // Кладет продукт с уже назначенным ID, не выдавая новый
+    void restore(Product product) {
+        productStore.put(product.getId(), product);
+        advanceIdCounter(product.getId());
+    }
+
+    // Удаляет продукт без логирования
+    void remove(Long id) {
+        productStore.remove(id);
+    }
+
+    // Количество продуктов (для ConcurrentSkipListMap - обход, но без копирования)
+    int size() {
+        return productStore.size();
+    }
+
+    // Последний выданный ID
+    long currentId() {
+        return ids.lastId();
+    }
+
+    // Гарантирует, что новые ID будут больше id
+    void advanceIdCounter(long id) {
+        ids.advancePast(id);
+    }
 }
@@ -0,0 +1,153 @@
+package com.example.coreservice.repository;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.index.ProductSearchIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// Хранилище с вторичными индексами для поиска по цене и имени.
+// Индексы обновляются слушателем под той же блокировкой полосы, что и запись (см. ObservableProductRepository),
+// но запись в хранилище и изменение индекса - не одна операция: обновление цены сначала удаляет старый ключ,
+// потом добавляет новый, и обход индекса в этот момент пропустил бы продукт или встретил его дважды.
+// Поэтому поиск согласован с записями как seqlock: запись (хранилище + индекс) учитывается счетчиками
+// writesStarted/writesFinished, а поиск принимается, только если за время его выполнения ни одна запись
+// не шла. После нескольких неудачных попыток поиск берет gate эксклюзивно и выполняется без записей
+public class IndexedProductRepository extends ObservableProductRepository {
+
+    // Сколько раз поиск пробует выполниться без блокировки, прежде чем остановить записи
+    private static final int OPTIMISTIC_ATTEMPTS = 4;
+
+    private final ProductSearchIndex index = new ProductSearchIndex();
+    // Записи берут gate совместно (друг другу не мешают), поиск - эксклюзивно и только после неудачных попыток
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+    private final AtomicLong writesStarted = new AtomicLong();
+    private final AtomicLong writesFinished = new AtomicLong();
+
+    public IndexedProductRepository(ProductRepository delegate) {
+        super(delegate);
+        addListener(index);
+        // Индексируем то, что уже есть в хранилище (например, восстановлено с диска)
+        Long cursor = null;
+        List<Product> page;
+        do {
+            page = delegate.findPage(cursor, 1024);
+            for (Product product : page) {
+                index.onChange(null, product);
+            }
+            if (!page.isEmpty()) {
+                cursor = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == 1024);
+    }
+
+    @Override
+    public Product save(Product product) {
+        return write(() -> super.save(product));
+    }
+
+    @Override
+    public Optional<Product> update(Long id, Product product, long expectedVersion) {
+        return write(() -> super.update(id, product, expectedVersion));
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        return write(() -> super.deleteById(id));
+    }
+
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        return write(() -> super.saveAll(products));
+    }
+
+    @Override
+    public List<Long> deleteAllById(Collection<Long> ids) {
+        return write(() -> super.deleteAllById(ids));
+    }
+
+    @Override
+    public List<Product> findByPriceBetween(double minPrice, double maxPrice, boolean descending, int limit) {
+        return search(() -> collect(index.idsByPrice(minPrice, maxPrice, descending),
+                product -> product.getPrice() >= minPrice && product.getPrice() <= maxPrice, limit));
+    }
+
+    @Override
+    public List<Product> findByNamePrefix(String prefix, int limit) {
+        String lowerPrefix = ProductSearchIndex.normalize(prefix);
+        return search(() -> collect(index.idsByNamePrefix(prefix),
+                product -> product.getName() != null && ProductSearchIndex.normalize(product.getName()).startsWith(lowerPrefix),
+                limit));
+    }
+
+    @Override
+    public List<Product> findByNameContaining(String fragment, int limit) {
+        if (ProductSearchIndex.normalize(fragment).length() < ProductSearchIndex.GRAM_LENGTH) {
+            // Фрагмент короче триграммы - остается только полный обход
+            return delegate.findByNameContaining(fragment, limit);
+        }
+        String lowerFragment = ProductSearchIndex.normalize(fragment);
+        return search(() -> {
+            Set<Long> candidates = index.idsByNameFragment(fragment);
+            return collect(new TreeSet<>(candidates),
+                    product -> product.getName() != null && ProductSearchIndex.normalize(product.getName()).contains(lowerFragment),
+                    limit);
+        });
+    }
+
+    // Запись вместе с обновлением индекса слушателем; исключение (конфликт версий, ошибка журнала) тоже ее завершает
+    private <T> T write(Supplier<T> operation) {
+        gate.readLock().lock();
+        writesStarted.incrementAndGet();
+        try {
+            return operation.get();
+        } finally {
+            writesFinished.incrementAndGet();
+            gate.readLock().unlock();
+        }
+    }
+
+    // Результат поиска принимается, если перед ним не было незавершенных записей (finished == started)
+    // и за время поиска не началась ни одна новая (started не изменился)
+    private <T> T search(Supplier<T> query) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long started = writesStarted.get();
+            if (writesFinished.get() == started) {
+                T result = query.get();
+                if (writesStarted.get() == started) {
+                    return result;
+                }
+            }
+            Thread.onSpinWait();
+        }
+        gate.writeLock().lock();
+        try {
+            return query.get();
+        } finally {
+            gate.writeLock().unlock();
+        }
+    }
+
+    // Идет по кандидатам в порядке индекса, берет актуальное состояние из хранилища и оставляет подходящие
+    private List<Product> collect(Iterable<Long> candidateIds, Predicate<Product> stillMatches, int limit) {
+        List<Product> result = new ArrayList<>(Math.min(limit, 1024));
+        for (Long id : candidateIds) {
+            if (result.size() >= limit) {
+                break;
+            }
+            Optional<Product> current = delegate.findById(id);
+            if (current.isPresent() && stillMatches.test(current.get())) {
+                result.add(current.get());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.coreservice.repository;
+
+import com.example.coreservice.model.Product;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Обертка, которая меряет каждую операцию хранилища: таймер core.repository.operations{operation=...}
+// и число продуктов core.repository.size. Таймеры создаются заранее, так что на вызов приходится
+// два System.nanoTime() и запись в таймер без поиска по тегам. Закрывает хранилище бин ObservableProductRepository
+public class MeteredProductRepository implements ProductRepository {
+
+    private final ObservableProductRepository delegate;
+    // Размер считаем по результатам записей, прошедших через эту обертку: для ConcurrentSkipListMap size() -
+    // это полный обход. Не по уведомлениям ObservableProductRepository: о созданном продукте они сообщают
+    // уже после записи, и удаление, успевшее между ними, уменьшило бы счетчик без увеличения
+    private final AtomicLong size = new AtomicLong();
+
+    private final Timer save;
+    private final Timer findById;
+    private final Timer findAll;
+    private final Timer findPage;
+    private final Timer update;
+    private final Timer deleteById;
+    private final Timer saveAll;
+    private final Timer findAllById;
+    private final Timer deleteAllById;
+    private final Timer findByPriceBetween;
+    private final Timer findByNamePrefix;
+    private final Timer findByNameContaining;
+
+    public MeteredProductRepository(ObservableProductRepository delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.save = timer(registry, "save");
+        this.findById = timer(registry, "findById");
+        this.findAll = timer(registry, "findAll");
+        this.findPage = timer(registry, "findPage");
+        this.update = timer(registry, "update");
+        this.deleteById = timer(registry, "deleteById");
+        this.saveAll = timer(registry, "saveAll");
+        this.findAllById = timer(registry, "findAllById");
+        this.deleteAllById = timer(registry, "deleteAllById");
+        this.findByPriceBetween = timer(registry, "findByPriceBetween");
+        this.findByNamePrefix = timer(registry, "findByNamePrefix");
+        this.findByNameContaining = timer(registry, "findByNameContaining");
+
+        // Начальный размер (например, после восстановления persistent-хранилища) - один обход при старте
+        size.addAndGet(countAll(delegate));
+        Gauge.builder("core.repository.size", size, AtomicLong::get)
+                .description("Products in the store")
+                .register(registry);
+    }
+
+    @Override
+    public Product save(Product product) {
+        Product saved = time(save, () -> delegate.save(product));
+        size.incrementAndGet();
+        return saved;
+    }
+
+    @Override
+    public Optional<Product> findById(Long id) {
+        return time(findById, () -> delegate.findById(id));
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return time(findAll, delegate::findAll);
+    }
+
+    @Override
+    public List<Product> findPage(Long after, int limit) {
+        return time(findPage, () -> delegate.findPage(after, limit));
+    }
+
+    @Override
+    public Optional<Product> update(Long id, Product product, long expectedVersion) {
+        return time(update, () -> delegate.update(id, product, expectedVersion));
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        boolean deleted = time(deleteById, () -> delegate.deleteById(id));
+        if (deleted) {
+            size.decrementAndGet();
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        List<Product> saved = time(saveAll, () -> delegate.saveAll(products));
+        size.addAndGet(saved.size());
+        return saved;
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<Long> ids) {
+        return time(findAllById, () -> delegate.findAllById(ids));
+    }
+
+    @Override
+    public List<Long> deleteAllById(Collection<Long> ids) {
+        List<Long> deleted = time(deleteAllById, () -> delegate.deleteAllById(ids));
+        size.addAndGet(-deleted.size());
+        return deleted;
+    }
+
+    @Override
+    public List<Product> findByPriceBetween(double minPrice, double maxPrice, boolean descending, int limit) {
+        return time(findByPriceBetween, () -> delegate.findByPriceBetween(minPrice, maxPrice, descending, limit));
+    }
+
+    @Override
+    public List<Product> findByNamePrefix(String prefix, int limit) {
+        return time(findByNamePrefix, () -> delegate.findByNamePrefix(prefix, limit));
+    }
+
+    @Override
+    public List<Product> findByNameContaining(String fragment, int limit) {
+        return time(findByNameContaining, () -> delegate.findByNameContaining(fragment, limit));
+    }
+
+    // Ошибки тоже попадают в таймер: операция, завершившаяся исключением, заняла время так же
+    private static <T> T time(Timer timer, Supplier<T> operation) {
+        long start = System.nanoTime();
+        try {
+            return operation.get();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Timer timer(MeterRegistry registry, String operation) {
+        return Timer.builder("core.repository.operations")
+                .tag("operation", operation)
+                .description("ProductRepository operation latency")
+                .register(registry);
+    }
+
+    private static long countAll(ProductRepository repository) {
+        long count = 0;
+        Long cursor = null;
+        List<Product> page;
+        do {
+            page = repository.findPage(cursor, 1024);
+            count += page.size();
+            if (!page.isEmpty()) {
+                cursor = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == 1024);
+        return count;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.coreservice.repository;
+
+import com.example.coreservice.model.Product;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Обертка над любым ProductRepository, которая сообщает слушателям о каждом изменении.
+// Изменение и уведомление выполняются под блокировкой полосы (stripe), к которой относится ID,
+// поэтому слушатели видят изменения одного продукта в том же порядке, в каком они применены.
+public class ObservableProductRepository implements ProductRepository, AutoCloseable {
+
+    private static final int STRIPES = 64;
+
+    protected final ProductRepository delegate;
+    private final List<ProductChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    public ObservableProductRepository(ProductRepository delegate) {
+        this.delegate = delegate;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public void addListener(ProductChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public Product save(Product product) {
+        Product saved = delegate.save(product);
+        publishCreated(saved.getId());
+        return saved;
+    }
+
+    @Override
+    public Optional<Product> findById(Long id) {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<Product> findPage(Long after, int limit) {
+        return delegate.findPage(after, limit);
+    }
+
+    @Override
+    public Optional<Product> update(Long id, Product product, long expectedVersion) {
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Optional<Product> before = delegate.findById(id);
+            // Конфликт версий выходит исключением, слушатели о нем не узнают
+            Optional<Product> updated = delegate.update(id, product, expectedVersion);
+            updated.ifPresent(after -> notifyListeners(before.orElse(null), after));
+            return updated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Optional<Product> before = delegate.findById(id);
+            boolean deleted = delegate.deleteById(id);
+            if (deleted) {
+                before.ifPresent(product -> notifyListeners(product, null));
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        List<Product> saved = delegate.saveAll(products);
+        for (Product product : saved) {
+            publishCreated(product.getId());
+        }
+        return saved;
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<Long> ids) {
+        return delegate.findAllById(ids);
+    }
+
+    @Override
+    public List<Long> deleteAllById(Collection<Long> ids) {
+        // Берем все нужные полосы по возрастанию номера (без взаимных блокировок) и удаляем пакетом
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (Long id : ids) {
+            stripes.add(stripeOf(id));
+        }
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+        try {
+            List<Product> before = delegate.findAllById(ids);
+            List<Long> deleted = delegate.deleteAllById(ids);
+            Set<Long> deletedIds = new HashSet<>(deleted);
+            for (Product product : before) {
+                if (deletedIds.contains(product.getId())) {
+                    notifyListeners(product, null);
+                }
+            }
+            return deleted;
+        } finally {
+            for (int stripe : stripes.descendingSet()) {
+                locks[stripe].unlock();
+            }
+        }
+    }
+
+    @Override
+    public List<Product> findByPriceBetween(double minPrice, double maxPrice, boolean descending, int limit) {
+        return delegate.findByPriceBetween(minPrice, maxPrice, descending, limit);
+    }
+
+    @Override
+    public List<Product> findByNamePrefix(String prefix, int limit) {
+        return delegate.findByNamePrefix(prefix, limit);
+    }
+
+    @Override
+    public List<Product> findByNameContaining(String fragment, int limit) {
+        return delegate.findByNameContaining(fragment, limit);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    // ID нового продукта становится известен только после save, поэтому уведомляем о его текущем
+    // состоянии уже под блокировкой: если продукт успели изменить или удалить, слушатели получат
+    // актуальное состояние, а не то, что было передано в save
+    private void publishCreated(Long id) {
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            delegate.findById(id).ifPresent(current -> notifyListeners(null, current));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void notifyListeners(Product before, Product after) {
+        for (ProductChangeListener listener : listeners) {
+            listener.onChange(before, after);
+        }
+    }
+
+    private ReentrantLock lockFor(Long id) {
+        return locks[stripeOf(id)];
+    }
+
+    private static int stripeOf(Long id) {
+        return Long.hashCode(id * 0x9E3779B97F4A7C15L) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.coreservice.repository;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.wal.FsyncPolicy;
+import com.example.coreservice.repository.wal.LogRecordHandler;
+import com.example.coreservice.repository.wal.SnapshotFile;
+import com.example.coreservice.repository.wal.WriteAheadLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Хранилище с сохранением на диск: обслуживает запросы из InMemoryProductRepository,
+// а каждое изменение пишет в журнал (WriteAheadLog). Периодически делается снимок всего хранилища,
+// после чего старые сегменты журнала удаляются. При старте: последний снимок + хвост журнала.
+public class PersistentProductRepository implements ProductRepository, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistentProductRepository.class);
+
+    // Размер порции при обходе хранилища для снимка
+    private static final int SNAPSHOT_PAGE_SIZE = 1024;
+
+    private final InMemoryProductRepository store;
+    private final IdAllocator ids;
+    private final Path directory;
+    private final WriteAheadLog log;
+    // Изменение хранилища и запись в журнал выполняются под одной блокировкой, чтобы порядок записей
+    // в журнале совпадал с порядком применения изменений. Хранилище меняется только под ней,
+    // поэтому результат изменения (ID, версия, есть ли продукт) вычисляется заранее, сначала пишется
+    // в журнал и только после успешной записи применяется: если журнал бросил исключение (закрыт,
+    // запись не помещается в сегмент, не создан новый сегмент), хранилище не изменилось
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ScheduledExecutorService snapshotScheduler;
+    // LSN журнала на момент последнего снимка: если он не изменился, снимок не нужен
+    private long snapshotLsn;
+
+    public PersistentProductRepository(Path directory, FsyncPolicy fsyncPolicy, Duration fsyncInterval,
+                                       int segmentSize, Duration snapshotInterval) {
+        this(directory, fsyncPolicy, fsyncInterval, segmentSize, snapshotInterval, IdAllocator.single());
+    }
+
+    public PersistentProductRepository(Path directory, FsyncPolicy fsyncPolicy, Duration fsyncInterval,
+                                       int segmentSize, Duration snapshotInterval, IdAllocator ids) {
+        this.store = new InMemoryProductRepository(ids);
+        this.ids = ids;
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create data directory " + directory, e);
+        }
+        long lastSegment = recover(ids);
+        this.log = new WriteAheadLog(directory, lastSegment + 1, segmentSize, fsyncPolicy, fsyncInterval);
+        if (snapshotInterval.isZero() || snapshotInterval.isNegative()) {
+            this.snapshotScheduler = null;
+        } else {
+            this.snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "product-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = snapshotInterval.toMillis();
+            snapshotScheduler.scheduleWithFixedDelay(this::snapshotIfChanged, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public Product save(Product product) {
+        long lsn;
+        Product saved;
+        writeLock.lock();
+        try {
+            product.setId(ids.next());
+            product.setVersion(1);
+            lsn = log.appendPut(product.getId(), product.getName(), product.getPrice(), product.getVersion());
+            store.restore(product);
+            saved = product;
+        } finally {
+            writeLock.unlock();
+        }
+        // Ждем fsync вне блокировки: пока ждем, другие записи попадают в тот же fsync
+        log.awaitDurable(lsn);
+        return saved;
+    }
+
+    @Override
+    public Optional<Product> findById(Long id) {
+        return store.findById(id);
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return store.findAll();
+    }
+
+    @Override
+    public List<Product> findPage(Long after, int limit) {
+        return store.findPage(after, limit);
+    }
+
+    @Override
+    public Optional<Product> update(Long id, Product product, long expectedVersion) {
+        long lsn = 0;
+        Optional<Product> updated;
+        writeLock.lock();
+        try {
+            Optional<Product> existing = store.findById(id);
+            if (existing.isPresent()) {
+                long currentVersion = existing.get().getVersion();
+                // При конфликте версий исключение выходит до записи в журнал
+                if (expectedVersion != ANY_VERSION && currentVersion != expectedVersion) {
+                    throw new ProductVersionConflictException(id, expectedVersion, currentVersion);
+                }
+                product.setId(id);
+                product.setVersion(currentVersion + 1);
+                lsn = log.appendPut(id, product.getName(), product.getPrice(), product.getVersion());
+                store.restore(product);
+                updated = Optional.of(product);
+            } else {
+                updated = Optional.empty();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        log.awaitDurable(lsn);
+        return updated;
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        long lsn = 0;
+        boolean deleted;
+        writeLock.lock();
+        try {
+            deleted = store.findById(id).isPresent();
+            if (deleted) {
+                lsn = log.appendDelete(id);
+                store.remove(id);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        log.awaitDurable(lsn);
+        return deleted;
+    }
+
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        long lsn = 0;
+        List<Product> saved;
+        writeLock.lock();
+        try {
+            long first = ids.reserve(products.size());
+            for (int i = 0; i < products.size(); i++) {
+                products.get(i).setId(ids.idOf(first + i));
+                products.get(i).setVersion(1);
+            }
+            // Пакет попадает в журнал целиком или не попадает совсем
+            lsn = products.isEmpty() ? 0 : log.appendPuts(products);
+            for (Product product : products) {
+                store.restore(product);
+            }
+            saved = products;
+        } finally {
+            writeLock.unlock();
+        }
+        // Весь пакет подтверждается одним ожиданием fsync
+        log.awaitDurable(lsn);
+        return saved;
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<Long> ids) {
+        return store.findAllById(ids);
+    }
+
+    @Override
+    public List<Long> deleteAllById(Collection<Long> ids) {
+        long lsn = 0;
+        List<Long> deleted;
+        writeLock.lock();
+        try {
+            // Повторяющийся ID удаляется и возвращается один раз, как в InMemoryProductRepository
+            Set<Long> existing = new LinkedHashSet<>();
+            for (Long id : ids) {
+                if (store.findById(id).isPresent()) {
+                    existing.add(id);
+                }
+            }
+            deleted = new ArrayList<>(existing);
+            if (!deleted.isEmpty()) {
+                lsn = log.appendDeletes(deleted);
+                for (Long id : deleted) {
+                    store.remove(id);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        log.awaitDurable(lsn);
+        return deleted;
+    }
+
+    // Делает компактирующий снимок хранилища и удаляет покрытые им сегменты журнала.
+    // Записи не блокируются на время снимка: блокировка берется только для переключения сегмента
+    public synchronized void snapshot() {
+        long segment;
+        long idCounter;
+        long coveredLsn;
+        writeLock.lock();
+        try {
+            segment = log.roll();
+            idCounter = store.currentId();
+            coveredLsn = log.writtenLsn();
+        } finally {
+            writeLock.unlock();
+        }
+        // Изменения, сделанные во время обхода, есть и в новом сегменте журнала; записи журнала
+        // содержат полное состояние продукта, поэтому повторное применение при восстановлении безопасно
+        try (SnapshotFile.Writer writer = SnapshotFile.create(directory, segment, idCounter)) {
+            Long cursor = null;
+            List<Product> page;
+            do {
+                page = store.findPage(cursor, SNAPSHOT_PAGE_SIZE);
+                for (Product product : page) {
+                    writer.write(product);
+                }
+                if (!page.isEmpty()) {
+                    cursor = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == SNAPSHOT_PAGE_SIZE);
+            writer.commit();
+        }
+        // Только после успешной записи: неудавшийся снимок повторяется по расписанию, даже если записей больше не было
+        snapshotLsn = coveredLsn;
+        log.deleteSegmentsBefore(segment);
+        logger.info("Snapshot written up to log segment {}", segment);
+    }
+
+    @Override
+    public void close() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        // Берем монитор снимка, чтобы не закрыть журнал посреди его создания
+        synchronized (this) {
+            log.close();
+        }
+    }
+
+    private synchronized void snapshotIfChanged() {
+        try {
+            if (log.writtenLsn() != snapshotLsn) {
+                snapshot();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Snapshot failed", e); // Следующая попытка - по расписанию
+        }
+    }
+
+    // Загружает последний снимок и проигрывает журнал после него; возвращает номер последнего сегмента.
+    // Каждый восстановленный ID должен принадлежать этому шарду: данные, записанные при другом
+    // core.shard.count/index/id-block-size, шлюз искал бы уже на других шардах, поэтому такой старт - ошибка
+    private long recover(IdAllocator ids) {
+        long started = System.nanoTime();
+        LogRecordHandler handler = new LogRecordHandler() {
+            @Override
+            public void put(long id, String name, double price, long version) {
+                checkOwner(id);
+                store.restore(new Product(id, name, price, version));
+            }
+
+            @Override
+            public void delete(long id) {
+                checkOwner(id);
+                store.remove(id);
+                store.advanceIdCounter(id);
+            }
+
+            private void checkOwner(long id) {
+                if (ids.shardOf(id) != ids.shardIndex()) {
+                    throw new IllegalStateException("Product " + id + " in " + directory + " belongs to shard "
+                            + ids.shardOf(id) + ", not " + ids.shardIndex() + " of " + ids.shardCount()
+                            + ": the data was written with a different shard layout, resharding is not supported");
+                }
+            }
+        };
+        SnapshotFile.Header snapshot = SnapshotFile.loadLatest(directory, handler);
+        long fromSegment = 0;
+        if (snapshot != null) {
+            fromSegment = snapshot.segment();
+            store.advanceIdCounter(snapshot.idCounter());
+        }
+        long lastSegment = WriteAheadLog.replay(directory, fromSegment, handler);
+        logger.info("Recovered {} products from {} in {} ms",
+                store.size(), directory, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return lastSegment;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.coreservice.repository;
+
+import com.example.coreservice.model.Product;
+
+// Получатель изменений хранилища. Вызывается под блокировкой ID продукта (см. ObservableProductRepository),
+// поэтому изменения одного продукта приходят строго по порядку.
+public interface ProductChangeListener {
+    // before == null - продукт создан, after == null - продукт удален
+    void onChange(Product before, Product after);
+}
@@ -1,13 +1,79 @@
 package com.example.coreservice.repository;
 
 import com.example.coreservice.model.Product;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 public interface ProductRepository {
+    // Ожидаемая версия для безусловного обновления
+    long ANY_VERSION = -1;
+
     Product save(Product product);
     Optional<Product> findById(Long id);
     List<Product> findAll();
-    Optional<Product> update(Long id, Product product);
+    // Страница продуктов, упорядоченных по ID: не более limit штук с ID строго больше after (null - с начала)
+    List<Product> findPage(Long after, int limit);
+    default Optional<Product> update(Long id, Product product) {
+        return update(id, product, ANY_VERSION);
+    }
+    // Сравнение с обменом: обновляет продукт, только если его текущая версия равна expectedVersion
+    // (или expectedVersion == ANY_VERSION), иначе бросает ProductVersionConflictException.
+    // Новая версия на единицу больше текущей; empty - продукта нет
+    Optional<Product> update(Long id, Product product, long expectedVersion);
     boolean deleteById(Long id);
+    // Пакетные операции: один вызов вместо N
+    List<Product> saveAll(List<Product> products);
+    // Найденные продукты в порядке запрошенных ID; отсутствующие пропускаются
+    List<Product> findAllById(Collection<Long> ids);
+    // Возвращает ID, которые действительно были удалены
+    List<Long> deleteAllById(Collection<Long> ids);
+
+    // --- Поиск. Реализации по умолчанию обходят все хранилище; IndexedProductRepository использует индексы ---
+
+    // Продукты с ценой в [minPrice, maxPrice], упорядоченные по цене (при равной цене - по ID)
+    default List<Product> findByPriceBetween(double minPrice, double maxPrice, boolean descending, int limit) {
+        Comparator<Product> order = Comparator.comparingDouble(Product::getPrice).thenComparing(Product::getId);
+        return scan(product -> product.getPrice() >= minPrice && product.getPrice() <= maxPrice,
+                descending ? order.reversed() : order, limit);
+    }
+
+    // Продукты, имя которых начинается с prefix без учета регистра; упорядочены по имени, затем по ID
+    default List<Product> findByNamePrefix(String prefix, int limit) {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        return scan(product -> product.getName() != null && product.getName().toLowerCase(Locale.ROOT).startsWith(lowerPrefix),
+                Comparator.comparing((Product product) -> product.getName().toLowerCase(Locale.ROOT)).thenComparing(Product::getId),
+                limit);
+    }
+
+    // Продукты, имя которых содержит fragment без учета регистра; упорядочены по ID
+    default List<Product> findByNameContaining(String fragment, int limit) {
+        String lowerFragment = fragment.toLowerCase(Locale.ROOT);
+        return scan(product -> product.getName() != null && product.getName().toLowerCase(Locale.ROOT).contains(lowerFragment),
+                Comparator.comparing(Product::getId), limit);
+    }
+
+    // Полный обход хранилища порциями по ID
+    private List<Product> scan(Predicate<Product> filter, Comparator<Product> order, int limit) {
+        List<Product> matches = new ArrayList<>();
+        Long cursor = null;
+        List<Product> page;
+        do {
+            page = findPage(cursor, 1024);
+            for (Product product : page) {
+                if (filter.test(product)) {
+                    matches.add(product);
+                }
+            }
+            if (!page.isEmpty()) {
+                cursor = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == 1024);
+        matches.sort(order);
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
 }
\ No newline at end of file
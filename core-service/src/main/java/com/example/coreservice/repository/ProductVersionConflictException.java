@@ -0,0 +1,16 @@
+package com.example.coreservice.repository;
+
+// Условное обновление не выполнено: продукт успели изменить после того, как клиент прочитал его версию
+public class ProductVersionConflictException extends IllegalStateException {
+
+    private final long currentVersion;
+
+    public ProductVersionConflictException(Long id, long expectedVersion, long currentVersion) {
+        super("Product " + id + " has version " + currentVersion + ", expected " + expectedVersion);
+        this.currentVersion = currentVersion;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.coreservice.repository.compact;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Хранилище строк в UTF-8 в виде больших страниц byte[] вместо отдельного String на каждую строку.
+// Строка адресуется одним long: (смещение << LENGTH_BITS) | длина. NULL_REF - строка null.
+// Место освобожденных строк переиспользуется только при компактировании. Не потокобезопасно.
+public class ByteArena {
+
+    public static final long NULL_REF = -1;
+
+    private static final int LENGTH_BITS = 24;
+    private static final int PAGE_BITS = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS; // 1 МБ
+    private static final int MAX_LENGTH = PAGE_SIZE;
+
+    private final List<byte[]> pages = new ArrayList<>();
+    // Смещение конца записанных данных (страницы заполняются последовательно)
+    private long end;
+    // Байт в строках, которые больше не используются
+    private long garbage;
+
+    public long add(String value) {
+        if (value == null) {
+            return NULL_REF;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return add(bytes, 0, bytes.length);
+    }
+
+    private long add(byte[] source, int from, int length) {
+        if (length > MAX_LENGTH) {
+            throw new IllegalArgumentException("String of " + length + " bytes is too long");
+        }
+        int pageOffset = (int) (end & (PAGE_SIZE - 1));
+        if (pageOffset + length > PAGE_SIZE) {
+            // Строка не разрывается между страницами: хвост страницы остается пустым
+            garbage += PAGE_SIZE - pageOffset;
+            end += PAGE_SIZE - pageOffset;
+            pageOffset = 0;
+        }
+        int pageIndex = (int) (end >>> PAGE_BITS);
+        while (pages.size() <= pageIndex) {
+            pages.add(new byte[PAGE_SIZE]);
+        }
+        System.arraycopy(source, from, pages.get(pageIndex), pageOffset, length);
+        long ref = (end << LENGTH_BITS) | length;
+        end += length;
+        return ref;
+    }
+
+    public String get(long ref) {
+        if (ref == NULL_REF) {
+            return null;
+        }
+        long offset = ref >>> LENGTH_BITS;
+        int length = (int) (ref & ((1 << LENGTH_BITS) - 1));
+        return new String(pages.get((int) (offset >>> PAGE_BITS)), (int) (offset & (PAGE_SIZE - 1)), length, StandardCharsets.UTF_8);
+    }
+
+    // Помечает строку как неиспользуемую
+    public void release(long ref) {
+        if (ref != NULL_REF) {
+            garbage += ref & ((1 << LENGTH_BITS) - 1);
+        }
+    }
+
+    public long garbageBytes() {
+        return garbage;
+    }
+
+    public long usedBytes() {
+        return end;
+    }
+
+    public long footprintBytes() {
+        return (long) pages.size() * PAGE_SIZE;
+    }
+
+    // Переписывает живые строки в новую арену; refs обновляются на месте (NULL_REF и отрицательные пропускаются)
+    public ByteArena compact(long[] refs, int count) {
+        ByteArena compacted = new ByteArena();
+        for (int i = 0; i < count; i++) {
+            long ref = refs[i];
+            if (ref >= 0) {
+                long offset = ref >>> LENGTH_BITS;
+                refs[i] = compacted.add(pages.get((int) (offset >>> PAGE_BITS)), (int) (offset & (PAGE_SIZE - 1)),
+                        (int) (ref & ((1 << LENGTH_BITS) - 1)));
+            }
+        }
+        return compacted;
+    }
+}
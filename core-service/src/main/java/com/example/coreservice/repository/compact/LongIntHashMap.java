@@ -0,0 +1,132 @@
+package com.example.coreservice.repository.compact;
+
+import java.util.Arrays;
+
+// Хеш-таблица long -> int с открытой адресацией и линейным пробированием, без упаковки в объекты.
+// Ключи должны быть положительными: 0 - пустая ячейка, -1 - удаленная. Неположительный ключ put отвергает,
+// а get и remove считают отсутствующим - иначе он совпал бы с отметкой ячейки. Не потокобезопасна.
+public class LongIntHashMap {
+
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+    private static final float MAX_LOAD = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    // Занятые ячейки вместе с удаленными: от них зависит длина цепочек пробирования
+    private int used;
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Значение по ключу или -1, если ключа нет
+    public int get(long key) {
+        if (key <= 0) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        if (used + 1 > keys.length * MAX_LOAD) {
+            // Если таблица забита в основном удаленными ячейками - просто перестраиваем ее того же размера
+            rehash(size + 1 > keys.length * MAX_LOAD / 2 ? keys.length * 2 : keys.length);
+        }
+        int mask = keys.length - 1;
+        int firstRemoved = -1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                values[i] = value;
+                return;
+            }
+            if (k == REMOVED && firstRemoved < 0) {
+                firstRemoved = i;
+            } else if (k == EMPTY) {
+                int target = firstRemoved >= 0 ? firstRemoved : i;
+                if (target == i) {
+                    used++;
+                }
+                keys[target] = key;
+                values[target] = value;
+                size++;
+                return;
+            }
+        }
+    }
+
+    // Удаляет ключ; возвращает прежнее значение или -1
+    public int remove(long key) {
+        if (key <= 0) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                keys[i] = REMOVED;
+                size--;
+                return values[i];
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        used = 0;
+    }
+
+    // Примерный объем памяти таблицы в байтах
+    public long footprintBytes() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        size = 0;
+        used = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] > 0) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    // Перемешивание битов (финализатор MurmurHash3): последовательные ID не должны идти подряд в таблице
+    private static int mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
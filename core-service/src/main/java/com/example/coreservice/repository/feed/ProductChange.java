@@ -0,0 +1,26 @@
+package com.example.coreservice.repository.feed;
+
+import com.example.coreservice.model.Product;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Одна запись ленты изменений (строка NDJSON в GET /products/changes).
+// UPSERT - продукт создан или изменен (product - его новое состояние), DELETE - удален.
+// HEARTBEAT - изменений нет, соединение живо; RESET - подписчик отстал, нужна полная пересинхронизация
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ProductChange(long seq, Type type, Long id, Product product) {
+
+    public enum Type {
+        UPSERT,
+        DELETE,
+        HEARTBEAT,
+        RESET
+    }
+
+    public static ProductChange heartbeat(long seq) {
+        return new ProductChange(seq, Type.HEARTBEAT, null, null);
+    }
+
+    public static ProductChange reset(long seq) {
+        return new ProductChange(seq, Type.RESET, null, null);
+    }
+}
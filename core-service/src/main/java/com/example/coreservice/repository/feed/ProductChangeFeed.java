@@ -0,0 +1,103 @@
+package com.example.coreservice.repository.feed;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.ProductChangeListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Лента изменений хранилища: каждое изменение получает следующий номер (seq) и попадает в кольцевой буфер
+// последних capacity изменений. Подписчик читает ленту с любого номера, который еще есть в буфере;
+// если он отстал сильнее, нужна полная пересинхронизация (снимок GET /products + лента с его номера).
+// epoch - случайный идентификатор ленты: номера начинаются заново при каждом запуске core-service,
+// и подписчик с чужим epoch тоже должен пересинхронизироваться
+public class ProductChangeFeed implements ProductChangeListener {
+
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+    private final ProductChange[] ring;
+    // ReentrantLock, а не монитор: читатель ленты ждет изменений до heartbeat-интервала, и ожидание
+    // в synchronized на Java 21 держало бы поток-носитель виртуального потока все это время
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // Номер последнего изменения (под lock); изменения с номерами (lastSeq - capacity, lastSeq] лежат в буфере
+    private long lastSeq;
+
+    public ProductChangeFeed(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Change feed capacity must be positive: " + capacity);
+        }
+        this.ring = new ProductChange[capacity];
+    }
+
+    // Вызывается под блокировкой ID (ObservableProductRepository), поэтому изменения одного продукта
+    // получают номера в порядке применения. Сама запись в буфер - короткая секция под блокировкой ленты
+    @Override
+    public void onChange(Product before, Product after) {
+        ProductChange.Type type = after == null ? ProductChange.Type.DELETE : ProductChange.Type.UPSERT;
+        Long id = after == null ? before.getId() : after.getId();
+        // Копия: хранилище может переиспользовать объект, а лента отдается подписчикам позже
+        Product state = after == null ? null : new Product(after.getId(), after.getName(), after.getPrice(), after.getVersion());
+        lock.lock();
+        try {
+            long seq = ++lastSeq;
+            ring[(int) (seq % ring.length)] = new ProductChange(seq, type, id, state);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String epoch() {
+        return epoch;
+    }
+
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return lastSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Можно ли продолжить ленту после изменения after: все следующие изменения еще в буфере
+    public boolean canResumeAfter(long after) {
+        lock.lock();
+        try {
+            return after <= lastSeq && after >= lastSeq - ring.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Изменения с номерами больше after, не более max штук. Если их пока нет, ждет до timeout.
+    // Пустой список - за timeout изменений не было; null - изменения после after уже вытеснены из буфера
+    public List<ProductChange> read(long after, int max, long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (lastSeq <= after) {
+                if (remaining <= 0) {
+                    return Collections.emptyList();
+                }
+                remaining = changed.awaitNanos(remaining);
+            }
+            if (after < lastSeq - ring.length) {
+                return null;
+            }
+            int count = (int) Math.min(max, lastSeq - after);
+            List<ProductChange> changes = new ArrayList<>(count);
+            for (long seq = after + 1; seq <= after + count; seq++) {
+                changes.add(ring[(int) (seq % ring.length)]);
+            }
+            return changes;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
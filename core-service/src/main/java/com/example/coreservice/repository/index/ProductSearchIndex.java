@@ -0,0 +1,141 @@
+package com.example.coreservice.repository.index;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.ProductChangeListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Вторичные индексы продуктов:
+// - по цене: упорядоченное множество (цена, ID) - диапазон за O(log n + k);
+// - по префиксу имени: упорядоченное множество (имя в нижнем регистре, ID) - префикс это непрерывный диапазон;
+// - по подстроке имени: триграммы имени -> множество ID.
+// Индекс выдает только кандидатов: вызывающий перепроверяет их по основному хранилищу,
+// поэтому запрос, выполняющийся одновременно с записью, не вернет устаревших данных.
+public class ProductSearchIndex implements ProductChangeListener {
+
+    // Длина n-граммы в индексе подстрок; более короткие фрагменты индекс не обслуживает
+    public static final int GRAM_LENGTH = 3;
+
+    private final NavigableSet<PriceKey> byPrice = new ConcurrentSkipListSet<>();
+    private final NavigableSet<NameKey> byName = new ConcurrentSkipListSet<>();
+    private final ConcurrentMap<String, Set<Long>> byGram = new ConcurrentHashMap<>();
+
+    record PriceKey(double price, long id) implements Comparable<PriceKey> {
+        @Override
+        public int compareTo(PriceKey other) {
+            int byPrice = Double.compare(price, other.price);
+            return byPrice != 0 ? byPrice : Long.compare(id, other.id);
+        }
+    }
+
+    record NameKey(String name, long id) implements Comparable<NameKey> {
+        @Override
+        public int compareTo(NameKey other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : Long.compare(id, other.id);
+        }
+    }
+
+    @Override
+    public void onChange(Product before, Product after) {
+        if (before != null) {
+            remove(before);
+        }
+        if (after != null) {
+            add(after);
+        }
+    }
+
+    // ID продуктов с ценой в [minPrice, maxPrice] в порядке цены (при равной цене - по ID)
+    public Iterable<Long> idsByPrice(double minPrice, double maxPrice, boolean descending) {
+        NavigableSet<PriceKey> range = byPrice.subSet(new PriceKey(minPrice, Long.MIN_VALUE), true,
+                new PriceKey(maxPrice, Long.MAX_VALUE), true);
+        NavigableSet<PriceKey> ordered = descending ? range.descendingSet() : range;
+        return () -> ordered.stream().map(PriceKey::id).iterator();
+    }
+
+    // ID продуктов, имя которых (в нижнем регистре) начинается с prefix, в порядке имени
+    public Iterable<Long> idsByNamePrefix(String prefix) {
+        String lowerPrefix = normalize(prefix);
+        return () -> byName.tailSet(new NameKey(lowerPrefix, Long.MIN_VALUE), true).stream()
+                .takeWhile(key -> key.name().startsWith(lowerPrefix))
+                .map(NameKey::id)
+                .iterator();
+    }
+
+    // Кандидаты для поиска подстроки: ID продуктов, содержащих все триграммы фрагмента.
+    // null, если фрагмент короче GRAM_LENGTH и индекс помочь не может
+    public Set<Long> idsByNameFragment(String fragment) {
+        String lowerFragment = normalize(fragment);
+        if (lowerFragment.length() < GRAM_LENGTH) {
+            return null;
+        }
+        // Начинаем с самого короткого списка и пересекаем с остальными
+        List<Set<Long>> postings = new ArrayList<>();
+        for (String gram : grams(lowerFragment)) {
+            Set<Long> ids = byGram.get(gram);
+            if (ids == null) {
+                return Set.of();
+            }
+            postings.add(ids);
+        }
+        postings.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        Set<Long> candidates = new HashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(postings.get(i));
+        }
+        return candidates;
+    }
+
+    public static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private void add(Product product) {
+        long id = product.getId();
+        byPrice.add(new PriceKey(product.getPrice(), id));
+        if (product.getName() != null) {
+            String name = normalize(product.getName());
+            byName.add(new NameKey(name, id));
+            for (String gram : grams(name)) {
+                byGram.compute(gram, (key, ids) -> {
+                    Set<Long> postings = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                    postings.add(id);
+                    return postings;
+                });
+            }
+        }
+    }
+
+    private void remove(Product product) {
+        long id = product.getId();
+        byPrice.remove(new PriceKey(product.getPrice(), id));
+        if (product.getName() != null) {
+            String name = normalize(product.getName());
+            byName.remove(new NameKey(name, id));
+            for (String gram : grams(name)) {
+                // Пустые списки удаляем атомарно с последним ID, чтобы индекс не рос от удаленных продуктов
+                byGram.computeIfPresent(gram, (key, ids) -> {
+                    ids.remove(id);
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+        }
+    }
+
+    private static Set<String> grams(String value) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+            grams.add(value.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+}
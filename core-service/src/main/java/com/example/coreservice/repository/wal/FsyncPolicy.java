@@ -0,0 +1,11 @@
+package com.example.coreservice.repository.wal;
+
+// Когда записи журнала сбрасываются на диск (fsync)
+public enum FsyncPolicy {
+    // Запись подтверждается только после fsync; одновременные записи делят один fsync (group commit)
+    ALWAYS,
+    // Фоновый fsync раз в заданный интервал; при сбое ОС можно потерять последние миллисекунды записей
+    INTERVAL,
+    // Сброс на диск остается на усмотрение ОС (fsync только при смене сегмента и закрытии)
+    NEVER
+}
@@ -0,0 +1,9 @@
+package com.example.coreservice.repository.wal;
+
+// Получатель записей при восстановлении из снимка и журнала
+public interface LogRecordHandler {
+    // Продукт создан или обновлен (содержит полное состояние продукта)
+    void put(long id, String name, double price, long version);
+    // Продукт удален
+    void delete(long id);
+}
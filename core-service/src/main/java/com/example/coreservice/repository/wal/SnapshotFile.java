@@ -0,0 +1,254 @@
+package com.example.coreservice.repository.wal;
+
+import com.example.coreservice.model.Product;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Компактирующий снимок хранилища snapshot-<номер сегмента>.snap.
+// Номер в имени - первый сегмент журнала, который нужно проиграть поверх снимка.
+//
+// Формат: [int MAGIC][int FORMAT_VERSION][long сегмент][long счетчик ID],
+// затем продукты [byte 1][long id][double цена][long версия][int длина имени, -1 для null][имя в UTF-8],
+// затем [byte 0][long количество продуктов][int CRC32 всего предыдущего содержимого].
+// Снимки формата 1 (без версии) читаются как версия 1 у всех продуктов.
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x50534E50; // "PSNP"
+    private static final int FORMAT_VERSION = 2;
+    private static final int UNVERSIONED_FORMAT = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    private SnapshotFile() {
+    }
+
+    // Сведения о загруженном снимке
+    public record Header(long segment, long idCounter, long productCount) {
+    }
+
+    // Загружает самый свежий снимок в handler; null, если снимков нет
+    public static Header loadLatest(Path directory, LogRecordHandler handler) {
+        List<Long> snapshots = listSnapshots(directory);
+        if (snapshots.isEmpty()) {
+            return null;
+        }
+        Path path = snapshotPath(directory, snapshots.get(snapshots.size() - 1));
+        try (Reader in = new Reader(path)) {
+            in.require(Integer.BYTES * 2 + Long.BYTES * 2);
+            if (in.buffer.getInt() != MAGIC) {
+                throw new IllegalStateException("Unsupported snapshot format: " + path);
+            }
+            int format = in.buffer.getInt();
+            if (format != FORMAT_VERSION && format != UNVERSIONED_FORMAT) {
+                throw new IllegalStateException("Unsupported snapshot format " + format + ": " + path);
+            }
+            long segment = in.buffer.getLong();
+            long idCounter = in.buffer.getLong();
+            int fixedSize = Long.BYTES * 2 + (format == UNVERSIONED_FORMAT ? 0 : Long.BYTES) + Integer.BYTES;
+            long count = 0;
+            in.require(1);
+            while (in.buffer.get() == 1) {
+                in.require(fixedSize);
+                long id = in.buffer.getLong();
+                double price = in.buffer.getDouble();
+                long version = format == UNVERSIONED_FORMAT ? 1 : in.buffer.getLong();
+                int nameLength = in.buffer.getInt();
+                String name = null;
+                if (nameLength >= 0) {
+                    in.require(nameLength);
+                    // Имя декодируется прямо из буфера, без промежуточного массива
+                    ByteBuffer buffer = in.buffer;
+                    name = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), nameLength, StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + nameLength);
+                }
+                handler.put(id, name, price, version);
+                count++;
+                in.require(1);
+            }
+            in.require(Long.BYTES);
+            long expectedCount = in.buffer.getLong();
+            int expectedCrc = in.checksum();
+            in.require(Integer.BYTES);
+            if (in.buffer.getInt() != expectedCrc || expectedCount != count) {
+                throw new IllegalStateException("Snapshot is corrupted: " + path);
+            }
+            return new Header(segment, idCounter, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read snapshot " + path, e);
+        }
+    }
+
+    // Начинает запись нового снимка; он станет видимым только после Writer.commit()
+    public static Writer create(Path directory, long segment, long idCounter) {
+        return new Writer(directory, segment, idCounter);
+    }
+
+    public static final class Writer implements AutoCloseable {
+
+        private final Path directory;
+        private final long segment;
+        private final Path tempPath;
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private final DataOutputStream out;
+        private long count;
+        private boolean committed;
+
+        private Writer(Path directory, long segment, long idCounter) {
+            this.directory = directory;
+            this.segment = segment;
+            this.tempPath = directory.resolve(snapshotPath(directory, segment).getFileName() + ".tmp");
+            try {
+                this.channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                OutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                this.out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(segment);
+                out.writeLong(idCounter);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create snapshot " + tempPath, e);
+            }
+        }
+
+        public void write(Product product) {
+            try {
+                out.writeByte(1);
+                out.writeLong(product.getId());
+                out.writeDouble(product.getPrice());
+                out.writeLong(product.getVersion());
+                if (product.getName() == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] nameBytes = product.getName().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(nameBytes.length);
+                    out.write(nameBytes);
+                }
+                count++;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write snapshot " + tempPath, e);
+            }
+        }
+
+        // Дописывает хвост, делает fsync и атомарно публикует снимок; более старые снимки удаляются
+        public void commit() {
+            try {
+                out.writeByte(0);
+                out.writeLong(count);
+                int checksum = (int) crc.getValue();
+                out.writeInt(checksum);
+                out.flush();
+                channel.force(true);
+                channel.close();
+                Files.move(tempPath, snapshotPath(directory, segment), StandardCopyOption.ATOMIC_MOVE);
+                committed = true;
+                for (long older : listSnapshots(directory)) {
+                    if (older < segment) {
+                        Files.deleteIfExists(snapshotPath(directory, older));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot commit snapshot " + tempPath, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+                if (!committed) {
+                    Files.deleteIfExists(tempPath);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot close snapshot " + tempPath, e);
+            }
+        }
+    }
+
+    // Чтение снимка крупными блоками из FileChannel, как журнал читается из отображения в память:
+    // поля разбираются прямо из ByteBuffer, а CRC32 считается по блоку целиком, а не по каждому полю
+    private static final class Reader implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE).flip();
+        // Позиция в buffer, до которой байты уже учтены в crc
+        private int checksummed;
+
+        private Reader(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+
+        // Гарантирует, что в буфере есть size непрочитанных байт; EOFException - файл оборвался
+        private void require(int size) throws IOException {
+            if (buffer.remaining() >= size) {
+                return;
+            }
+            checksum();
+            if (size > buffer.capacity()) {
+                // Запись длиннее буфера (очень длинное имя) - увеличиваем буфер
+                buffer = ByteBuffer.allocate(size).put(buffer).flip();
+            } else {
+                buffer.compact().flip();
+            }
+            checksummed = 0;
+            buffer.position(buffer.limit()).limit(buffer.capacity());
+            while (buffer.position() < size) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+        }
+
+        // Учитывает в CRC все прочитанные байты и возвращает текущее значение
+        private int checksum() {
+            int position = buffer.position();
+            crc.update(buffer.array(), buffer.arrayOffset() + checksummed, position - checksummed);
+            checksummed = position;
+            return (int) crc.getValue();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static List<Long> listSnapshots(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list snapshots in " + directory, e);
+        }
+    }
+
+    private static Path snapshotPath(Path directory, long segment) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, segment, SUFFIX));
+    }
+}
@@ -0,0 +1,374 @@
+package com.example.coreservice.repository.wal;
+
+import com.example.coreservice.model.Product;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Журнал операций (write-ahead log) в отображенных в память файлах-сегментах wal-<номер>.log.
+//
+// Формат записи: [int длина данных][int CRC32 данных][данные],
+// данные: [byte операция][long id][double цена][int длина имени в байтах, -1 для null][имя в UTF-8],
+// у OP_PUT_VERSIONED за именем следует [long версия] (OP_PUT - записи до появления версий, читаются как версия 1).
+// Нулевая длина означает конец записанной части сегмента (файл сегмента заранее заполнен нулями).
+public class WriteAheadLog implements AutoCloseable {
+
+    static final byte OP_PUT = 1;
+    static final byte OP_DELETE = 2;
+    static final byte OP_PUT_VERSIONED = 3;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int FIXED_PAYLOAD_SIZE = 1 + 8 + 8 + 4;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final Duration fsyncInterval;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Ожидание писателей, пока их запись не окажется на диске (ALWAYS)
+    private final Condition flushed = lock.newCondition();
+    // Ожидание потока сброса, пока не появятся новые записи (ALWAYS)
+    private final Condition dirty = lock.newCondition();
+    private final Thread flusher;
+
+    // Поля ниже защищены lock
+    private long segmentSeq;
+    private MappedByteBuffer segment;
+    // Позиции в журнале (LSN) - общее число записанных и сброшенных на диск байт
+    private long writtenLsn;
+    private long flushedLsn;
+    private boolean closed;
+
+    // Открывает журнал для записи, начиная с нового сегмента с номером firstSegment
+    public WriteAheadLog(Path directory, long firstSegment, int segmentSize,
+                         FsyncPolicy fsyncPolicy, Duration fsyncInterval) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncInterval = fsyncInterval;
+        this.segmentSeq = firstSegment;
+        this.segment = mapNewSegment(firstSegment);
+        if (fsyncPolicy == FsyncPolicy.NEVER) {
+            this.flusher = null;
+        } else {
+            this.flusher = new Thread(this::runFlusher, "wal-flusher");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+
+    // Запись о создании/обновлении продукта; возвращает LSN конца записи
+    public long appendPut(long id, String name, double price, long version) {
+        return append(List.of(putPayload(id, name, price, version)));
+    }
+
+    // Запись об удалении продукта; возвращает LSN конца записи
+    public long appendDelete(long id) {
+        return append(List.of(deletePayload(id)));
+    }
+
+    // Записи о создании/обновлении пакета продуктов; возвращает LSN конца последней записи.
+    // Пакет пишется в один сегмент целиком: если append бросает исключение, в журнале нет ни одной записи пакета
+    public long appendPuts(List<Product> products) {
+        List<byte[]> payloads = new ArrayList<>(products.size());
+        for (Product product : products) {
+            payloads.add(putPayload(product.getId(), product.getName(), product.getPrice(), product.getVersion()));
+        }
+        return append(payloads);
+    }
+
+    // Записи об удалении пакета продуктов, как appendPuts
+    public long appendDeletes(List<Long> ids) {
+        List<byte[]> payloads = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            payloads.add(deletePayload(id));
+        }
+        return append(payloads);
+    }
+
+    // Ждет, пока запись с указанным LSN не окажется на диске. Ждать имеет смысл только при ALWAYS.
+    // Если журнал закрыт раньше, чем запись сброшена, подтверждать ее нельзя - бросаем исключение
+    public void awaitDurable(long lsn) {
+        if (fsyncPolicy != FsyncPolicy.ALWAYS) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (flushedLsn < lsn && !closed) {
+                flushed.awaitUninterruptibly();
+            }
+            if (flushedLsn < lsn) {
+                throw new IllegalStateException("Write-ahead log closed before LSN " + lsn + " was flushed");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Общее число байт, записанных в журнал с момента открытия
+    public long writtenLsn() {
+        lock.lock();
+        try {
+            return writtenLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Закрывает текущий сегмент и начинает новый; возвращает номер нового сегмента.
+    // Все записи с этого номера и далее сделаны после вызова roll()
+    public long roll() {
+        lock.lock();
+        try {
+            switchSegment();
+            return segmentSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Удаляет сегменты с номером меньше seq (их содержимое уже попало в снимок)
+    public void deleteSegmentsBefore(long seq) {
+        for (long existing : listSegments(directory)) {
+            if (existing < seq) {
+                try {
+                    Files.deleteIfExists(segmentPath(directory, existing));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot delete log segment " + existing, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            segment.force();
+            flushedLsn = writtenLsn;
+            closed = true;
+            flushed.signalAll();
+            dirty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+        }
+    }
+
+    // Номера существующих сегментов в порядке возрастания
+    public static List<Long> listSegments(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list log segments in " + directory, e);
+        }
+    }
+
+    // Проигрывает все записи сегментов с номером >= fromSegment по порядку.
+    // Чтение сегмента прекращается на первой пустой или поврежденной записи (оборванный хвост после сбоя).
+    // Возвращает номер последнего прочитанного сегмента или fromSegment - 1, если сегментов нет
+    public static long replay(Path directory, long fromSegment, LogRecordHandler handler) {
+        long last = fromSegment - 1;
+        CRC32 crc = new CRC32();
+        for (long seq : listSegments(directory)) {
+            if (seq < fromSegment) {
+                continue;
+            }
+            replaySegment(segmentPath(directory, seq), crc, handler);
+            last = seq;
+        }
+        return last;
+    }
+
+    private static void replaySegment(Path path, CRC32 crc, LogRecordHandler handler) {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read log segment " + path, e);
+        }
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int payloadSize = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (payloadSize < FIXED_PAYLOAD_SIZE || payloadSize > buffer.remaining()) {
+                return; // Конец записанной части сегмента
+            }
+            crc.reset();
+            crc.update(buffer.slice(start + HEADER_SIZE, payloadSize));
+            if ((int) crc.getValue() != checksum) {
+                return; // Запись не дописана до конца - дальше данных нет
+            }
+            byte op = buffer.get();
+            long id = buffer.getLong();
+            double price = buffer.getDouble();
+            int nameLength = buffer.getInt();
+            String name = null;
+            if (nameLength >= 0) {
+                byte[] nameBytes = new byte[nameLength];
+                buffer.get(nameBytes);
+                name = new String(nameBytes, StandardCharsets.UTF_8);
+            }
+            if (op == OP_PUT_VERSIONED) {
+                handler.put(id, name, price, buffer.getLong());
+            } else if (op == OP_PUT) {
+                handler.put(id, name, price, 1);
+            } else if (op == OP_DELETE) {
+                handler.delete(id);
+            }
+            buffer.position(start + HEADER_SIZE + payloadSize);
+        }
+    }
+
+    // Данные записи и CRC готовятся до блокировки; под lock все проверки (журнал открыт, записи помещаются,
+    // новый сегмент создан) выполняются до первого байта в сегменте, поэтому при исключении ничего не записано
+    private long append(List<byte[]> payloads) {
+        int[] checksums = new int[payloads.size()];
+        long size = 0;
+        CRC32 checksum = new CRC32();
+        for (int i = 0; i < checksums.length; i++) {
+            byte[] payload = payloads.get(i);
+            checksum.reset();
+            checksum.update(payload);
+            checksums[i] = (int) checksum.getValue();
+            size += HEADER_SIZE + payload.length;
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            // Оставляем место под нулевой заголовок - признак конца сегмента
+            if (size + HEADER_SIZE > segmentSize) {
+                throw new IllegalArgumentException("Log records of " + size + " bytes do not fit into a segment");
+            }
+            if (segment.remaining() < size + HEADER_SIZE) {
+                switchSegment();
+            }
+            for (int i = 0; i < checksums.length; i++) {
+                byte[] payload = payloads.get(i);
+                // Длина пишется последней: до нее запись выглядит как конец сегмента
+                int start = segment.position();
+                segment.position(start + HEADER_SIZE);
+                segment.put(payload);
+                segment.putInt(start + 4, checksums[i]);
+                segment.putInt(start, payload.length);
+            }
+            writtenLsn += size;
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                dirty.signal();
+            }
+            return writtenLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] putPayload(long id, String name, double price, long version) {
+        byte[] nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(FIXED_PAYLOAD_SIZE + (nameBytes == null ? 0 : nameBytes.length) + Long.BYTES);
+        payload.put(OP_PUT_VERSIONED).putLong(id).putDouble(price);
+        if (nameBytes == null) {
+            payload.putInt(-1);
+        } else {
+            payload.putInt(nameBytes.length).put(nameBytes);
+        }
+        payload.putLong(version);
+        return payload.array();
+    }
+
+    private static byte[] deletePayload(long id) {
+        return ByteBuffer.allocate(FIXED_PAYLOAD_SIZE).put(OP_DELETE).putLong(id).putDouble(0).putInt(-1).array();
+    }
+
+    // Вызывается под lock: сбрасывает текущий сегмент на диск и открывает следующий
+    private void switchSegment() {
+        segment.force();
+        flushedLsn = writtenLsn;
+        flushed.signalAll();
+        segmentSeq++;
+        segment = mapNewSegment(segmentSeq);
+    }
+
+    private MappedByteBuffer mapNewSegment(long seq) {
+        Path path = segmentPath(directory, seq);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create log segment " + path, e);
+        }
+    }
+
+    // Фоновый сброс на диск. Пока идет fsync, новые записи копятся и уходят следующим fsync (group commit)
+    private void runFlusher() {
+        while (true) {
+            MappedByteBuffer target;
+            long targetLsn;
+            lock.lock();
+            try {
+                if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                    while (!closed && writtenLsn == flushedLsn) {
+                        dirty.awaitUninterruptibly();
+                    }
+                } else {
+                    dirty.await(fsyncInterval.toNanos(), TimeUnit.NANOSECONDS);
+                }
+                if (closed) {
+                    return;
+                }
+                if (writtenLsn == flushedLsn) {
+                    continue;
+                }
+                target = segment;
+                targetLsn = writtenLsn;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            target.force();
+            lock.lock();
+            try {
+                if (targetLsn > flushedLsn) {
+                    flushedLsn = targetLsn;
+                }
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static Path segmentPath(Path directory, long seq) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+    }
+}
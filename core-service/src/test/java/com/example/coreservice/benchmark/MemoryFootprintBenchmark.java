@@ -0,0 +1,52 @@
+package com.example.coreservice.benchmark;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.CompactProductRepository;
+import com.example.coreservice.repository.InMemoryProductRepository;
+import com.example.coreservice.repository.ProductRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Сравнение объема кучи на продукт: InMemoryProductRepository против CompactProductRepository.
+// Запуск (из core-service после mvn test-compile), каждая реализация меряется в отдельной куче:
+//   java -Xmx8g -XX:+UseParallelGC -cp target/classes:target/test-classes com.example.coreservice.benchmark.MemoryFootprintBenchmark 5000000
+public class MemoryFootprintBenchmark {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    public static void main(String[] args) {
+        int size = args.length == 0 ? 1_000_000 : Integer.parseInt(args[0]);
+        System.out.printf("%-12s %12s %14s %18s%n", "store", "products", "heap, MB", "bytes/product");
+        measure("memory", size, InMemoryProductRepository::new);
+        measure("compact", size, CompactProductRepository::new);
+    }
+
+    private static void measure(String name, int size, Supplier<ProductRepository> factory) {
+        long before = usedHeap();
+        ProductRepository repository = factory.get();
+        for (int written = 0; written < size; written += BATCH_SIZE) {
+            List<Product> batch = new ArrayList<>(BATCH_SIZE);
+            for (int i = written; i < Math.min(size, written + BATCH_SIZE); i++) {
+                // Имена типичной длины для каталога: 20-30 символов
+                batch.add(new Product(null, "Product name number " + i, i % 1000 + 0.99));
+            }
+            repository.saveAll(batch);
+        }
+        long used = usedHeap() - before;
+        System.out.printf("%-12s %12d %14d %18d%n", name, size, used >> 20, used / size);
+        // Держим ссылку до конца замера
+        if (repository.findById(1L).isEmpty()) {
+            throw new IllegalStateException("Store is empty");
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.coreservice.benchmark;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.PersistentProductRepository;
+import com.example.coreservice.repository.wal.FsyncPolicy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Замер времени старта PersistentProductRepository на больших каталогах.
+// Запуск (из core-service после mvn test-compile):
+//   java -Xmx4g -cp target/classes:target/test-classes com.example.coreservice.benchmark.RecoveryBenchmark 1000000 5000000
+// Для каждого размера каталога меряется восстановление только из журнала и из снимка + хвоста журнала (10% записей).
+// Замеры двух вариантов чередуются, в таблице - медиана из ROUNDS замеров каждого.
+public class RecoveryBenchmark {
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        long[] sizes = args.length == 0 ? new long[] {1_000_000} : Stream.of(args).mapToLong(Long::parseLong).toArray();
+        System.out.printf("%12s %16s %18s %10s%n", "products", "log only, ms", "snapshot+tail, ms", "data, MB");
+        for (long size : sizes) {
+            Path logDirectory = Files.createTempDirectory("recovery-benchmark");
+            Path snapshotDirectory = Files.createTempDirectory("recovery-benchmark");
+            try {
+                fill(logDirectory, size, false);
+                fill(snapshotDirectory, size, true);
+                long dataSize = directorySize(snapshotDirectory);
+                long[] logOnly = new long[ROUNDS];
+                long[] withSnapshot = new long[ROUNDS];
+                for (int round = 0; round < ROUNDS; round++) {
+                    logOnly[round] = measureStartup(logDirectory);
+                    withSnapshot[round] = measureStartup(snapshotDirectory);
+                }
+                System.out.printf("%12d %16d %18d %10d%n", size, median(logOnly), median(withSnapshot), dataSize >> 20);
+            } finally {
+                for (Path directory : List.of(logDirectory, snapshotDirectory)) {
+                    clear(directory);
+                    Files.deleteIfExists(directory);
+                }
+            }
+        }
+    }
+
+    // Заполняет каталог; при withSnapshot снимок делается после 90% записей
+    private static void fill(Path directory, long size, boolean withSnapshot) {
+        try (PersistentProductRepository repository = open(directory)) {
+            long snapshotAt = withSnapshot ? size * 9 / 10 : -1;
+            for (long written = 0; written < size; ) {
+                int batch = (int) Math.min(BATCH_SIZE, size - written);
+                if (written < snapshotAt && written + batch >= snapshotAt) {
+                    repository.snapshot();
+                }
+                List<Product> products = new ArrayList<>(batch);
+                for (int i = 0; i < batch; i++) {
+                    products.add(new Product(null, "Product " + (written + i), (written + i) % 1000 + 0.99));
+                }
+                repository.saveAll(products);
+                written += batch;
+            }
+        }
+    }
+
+    private static long measureStartup(Path directory) {
+        System.gc();
+        long started = System.nanoTime();
+        try (PersistentProductRepository ignored = open(directory)) {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static PersistentProductRepository open(Path directory) {
+        return new PersistentProductRepository(directory, FsyncPolicy.NEVER, Duration.ZERO, 64 << 20, Duration.ZERO);
+    }
+
+    private static long directorySize(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static void clear(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                if (!path.equals(directory)) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.coreservice.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Сравнение режимов выполнения core-service (платформенные потоки Tomcat / виртуальные потоки)
+// при большом числе медленных клиентов.
+// Медленные клиенты по байту присылают тело POST /products и все это время держат поток запроса;
+// быстрые клиенты параллельно читают GET /products/{id}, для них меряются пропускная способность и задержки.
+// Запуск (из core-service после mvn -Pjava21 package с JAVA_HOME на JDK 21, для каждого режима - свой экземпляр;
+// оба режима - на одной JVM, чтобы сравнивались только потоки):
+//   java -Djdk.tracePinnedThreads=full -jar target/core-service-0.0.1-SNAPSHOT.jar --spring.threads.virtual.enabled=false
+//   java -cp target/test-classes com.example.coreservice.benchmark.ThreadModeBenchmark http://localhost:8081 platform 400 16 30
+//   java -Djdk.tracePinnedThreads=full -jar target/core-service-0.0.1-SNAPSHOT.jar --spring.threads.virtual.enabled=true
+//   java -cp target/test-classes com.example.coreservice.benchmark.ThreadModeBenchmark http://localhost:8081 virtual 400 16 30
+// jdk.tracePinnedThreads печатает стек в журнал сервера, когда виртуальный поток блокируется, удерживая монитор.
+// Ожидание Object.wait() в synchronized так не ловится - его видно только в дампе потоков
+// (jcmd <pid> Thread.dump_to_file). Медленные клиенты сами нагружают процессор, поэтому клиенты и сервер
+// должны работать на разных ядрах или машинах - иначе сравниваются не потоки, а конкуренция за процессор.
+// Аргументы: URL, метка режима, число медленных клиентов, число быстрых клиентов, длительность в секундах.
+public class ThreadModeBenchmark {
+
+    private static final int SEEDED_PRODUCTS = 1000;
+    // Тело медленного клиента: BODY_SIZE байт по одному раз в BYTE_INTERVAL_MS, то есть ~2 секунды на запрос
+    private static final int BODY_SIZE = 100;
+    private static final long BYTE_INTERVAL_MS = 20;
+
+    public static void main(String[] args) throws Exception {
+        URI baseUri = URI.create(args.length > 0 ? args[0] : "http://localhost:8081");
+        String label = args.length > 1 ? args[1] : "unnamed";
+        int slowClients = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+        int fastClients = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        Duration duration = Duration.ofSeconds(args.length > 4 ? Long.parseLong(args[4]) : 30);
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        seed(client, baseUri);
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        AtomicLong slowRequests = new AtomicLong();
+        for (int i = 0; i < slowClients; i++) {
+            Thread thread = new Thread(() -> slowClient(baseUri, deadline, slowRequests), "slow-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        // Даем медленным клиентам занять потоки сервера
+        Thread.sleep(Math.min(2000, duration.toMillis() / 4));
+
+        long measureStart = System.nanoTime();
+        long[][] latencies = new long[fastClients][];
+        long[] errors = new long[fastClients];
+        List<Thread> fastThreads = new ArrayList<>(fastClients);
+        for (int i = 0; i < fastClients; i++) {
+            int index = i;
+            Thread thread = new Thread(() -> {
+                List<Long> measured = new ArrayList<>();
+                errors[index] = fastClient(client, baseUri, deadline, measured);
+                latencies[index] = measured.stream().mapToLong(Long::longValue).toArray();
+            }, "fast-client-" + i);
+            thread.start();
+            fastThreads.add(thread);
+        }
+        for (Thread thread : fastThreads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        long failed = Arrays.stream(errors).sum();
+        System.out.printf("%-10s %6s %6s %10s %8s %8s %8s %8s %8s %8s%n",
+                "mode", "slow", "fast", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors", "slow ok");
+        System.out.printf("%-10s %6d %6d %10.1f %8.1f %8.1f %8.1f %8.1f %8d %8d%n",
+                label, slowClients, fastClients, all.length / seconds,
+                millis(percentile(all, 0.50)), millis(percentile(all, 0.99)), millis(percentile(all, 0.999)),
+                millis(all.length == 0 ? 0 : all[all.length - 1]), failed, slowRequests.get());
+        System.exit(0);
+    }
+
+    private static void seed(HttpClient client, URI baseUri) throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < SEEDED_PRODUCTS; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"name\":\"Product ").append(i).append("\",\"price\":").append(i).append('}');
+        }
+        body.append(']');
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(baseUri.resolve("/products/batch"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build(), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 201) {
+            throw new IllegalStateException("Seeding failed with status " + response.statusCode());
+        }
+    }
+
+    // Возвращает число ошибок; задержки успешных запросов (нс) складывает в latencies
+    private static long fastClient(HttpClient client, URI baseUri, long deadline, List<Long> latencies) {
+        long errors = 0;
+        while (System.nanoTime() < deadline) {
+            long id = 1 + ThreadLocalRandom.current().nextInt(SEEDED_PRODUCTS);
+            HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/products/" + id))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            long start = System.nanoTime();
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() == 200 || response.statusCode() == 404) {
+                    latencies.add(System.nanoTime() - start);
+                } else {
+                    errors++;
+                }
+            } catch (IOException e) {
+                errors++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return errors;
+            }
+        }
+        return errors;
+    }
+
+    // Медленный клиент: отдельное соединение, заголовки сразу, тело - по байту
+    private static void slowClient(URI baseUri, long deadline, AtomicLong completed) {
+        byte[] body = String.format("%-" + BODY_SIZE + "s", "{\"name\":\"slow\",\"price\":1}").getBytes(StandardCharsets.US_ASCII);
+        byte[] headers = ("POST /products HTTP/1.1\r\nHost: " + baseUri.getHost() + "\r\n"
+                + "Content-Type: application/json\r\nContent-Length: " + body.length + "\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        while (System.nanoTime() < deadline) {
+            try (Socket socket = new Socket(baseUri.getHost(), baseUri.getPort())) {
+                socket.setTcpNoDelay(true);
+                OutputStream out = socket.getOutputStream();
+                out.write(headers);
+                out.flush();
+                for (byte b : body) {
+                    out.write(b);
+                    out.flush();
+                    TimeUnit.MILLISECONDS.sleep(BYTE_INTERVAL_MS);
+                }
+                InputStream in = socket.getInputStream();
+                in.readAllBytes();
+                completed.incrementAndGet();
+            } catch (IOException e) {
+                // Сервер мог закрыть соединение - просто начинаем заново
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
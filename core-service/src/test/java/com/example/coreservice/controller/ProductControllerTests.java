@@ -0,0 +1,314 @@
+package com.example.coreservice.controller;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.InMemoryProductRepository;
+import com.example.coreservice.repository.ObservableProductRepository;
+import com.example.coreservice.repository.feed.ProductChangeFeed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ProductControllerTests {
+
+	// Больше одной порции потоковой выдачи, чтобы проверить стык порций
+	private static final int PRODUCTS = ProductController.STREAM_CHUNK_SIZE + 10;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private ObservableProductRepository repository;
+	private ProductChangeFeed feed;
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	void setUp() {
+		repository = new ObservableProductRepository(new InMemoryProductRepository());
+		feed = new ProductChangeFeed(1024);
+		repository.addListener(feed);
+		mockMvc = MockMvcBuilders.standaloneSetup(new ProductController(repository, feed, objectMapper)).build();
+	}
+
+	@Test
+	void pagesWalkTheCatalogByCursor() throws Exception {
+		fill(PRODUCTS);
+		repository.deleteById(5L);
+
+		List<Long> walked = new ArrayList<>();
+		String cursor = null;
+		do {
+			MockHttpServletRequestBuilder request = get("/products").param("limit", "100");
+			if (cursor != null) {
+				request.param("after", cursor);
+			}
+			MvcResult result = mockMvc.perform(request)
+					.andExpect(status().isOk())
+					.andReturn();
+			Product[] page = objectMapper.readValue(result.getResponse().getContentAsByteArray(), Product[].class);
+			for (Product product : page) {
+				walked.add(product.getId());
+			}
+			cursor = result.getResponse().getHeader("X-Next-Cursor");
+			// Курсор есть только у полной страницы и указывает на ее последний элемент
+			if (cursor != null) {
+				assertEquals(100, page.length);
+				assertEquals(page[page.length - 1].getId(), Long.valueOf(cursor));
+			}
+		} while (cursor != null);
+
+		assertEquals(expectedIds(PRODUCTS, 5L), walked);
+	}
+
+	@Test
+	void pageRejectsNonPositiveLimitAndCapsLargeOne() throws Exception {
+		fill(ProductController.MAX_PAGE_SIZE + 1);
+		mockMvc.perform(get("/products").param("limit", "0"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/products").param("limit", "5000"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(ProductController.MAX_PAGE_SIZE))
+				.andExpect(header().string("X-Next-Cursor", String.valueOf(ProductController.MAX_PAGE_SIZE)));
+	}
+
+	@Test
+	void streamsWholeCatalogAsJsonArray() throws Exception {
+		fill(PRODUCTS);
+		repository.deleteById((long) PRODUCTS);
+
+		MvcResult started = mockMvc.perform(get("/products").accept(MediaType.APPLICATION_JSON))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		MvcResult result = mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(MediaType.APPLICATION_JSON))
+				.andExpect(header().string(ProductChangeController.SEQUENCE_HEADER, String.valueOf(PRODUCTS + 1)))
+				.andReturn();
+
+		Product[] products = objectMapper.readValue(result.getResponse().getContentAsByteArray(), Product[].class);
+		assertEquals(expectedIds(PRODUCTS, (long) PRODUCTS), ids(List.of(products)));
+	}
+
+	@Test
+	void streamsNdjsonAfterCursor() throws Exception {
+		fill(PRODUCTS);
+
+		MvcResult started = mockMvc.perform(get("/products").param("after", "10")
+						.accept(ProductController.APPLICATION_NDJSON_VALUE))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		MvcResult result = mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(ProductController.APPLICATION_NDJSON_VALUE))
+				.andReturn();
+
+		String body = result.getResponse().getContentAsString();
+		assertEquals('\n', body.charAt(body.length() - 1));
+		List<Product> products = new ArrayList<>();
+		for (String line : body.split("\n")) {
+			products.add(objectMapper.readValue(line, Product.class));
+		}
+		assertEquals(PRODUCTS - 10, products.size());
+		assertEquals(11L, products.get(0).getId());
+		assertEquals((long) PRODUCTS, products.get(products.size() - 1).getId());
+	}
+
+	@Test
+	void batchEndpointsCreateReadAndDelete() throws Exception {
+		mockMvc.perform(post("/products/batch").contentType(MediaType.APPLICATION_JSON)
+						.content("[{\"name\":\"Молоко\",\"price\":80.0},{\"name\":\"Хлеб\",\"price\":45.5}]"))
+				.andExpect(status().isCreated())
+				.andExpect(jsonPath("$[0].id").value(1))
+				.andExpect(jsonPath("$[1].id").value(2));
+		mockMvc.perform(get("/products").param("ids", "2,7,1"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(2))
+				.andExpect(jsonPath("$[0].name").value("Хлеб"))
+				.andExpect(jsonPath("$[1].name").value("Молоко"));
+		mockMvc.perform(delete("/products/batch").contentType(MediaType.APPLICATION_JSON).content("[1,7]"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[1]"));
+		assertEquals(List.of(2L), ids(repository.findPage(null, 10)));
+	}
+
+	@Test
+	void batchEndpointsRejectOversizedBatches() throws Exception {
+		int size = ProductController.MAX_BATCH_SIZE + 1;
+		StringBuilder products = new StringBuilder("[");
+		StringBuilder ids = new StringBuilder();
+		for (int i = 1; i <= size; i++) {
+			products.append(i > 1 ? "," : "").append("{\"name\":\"p\",\"price\":1}");
+			ids.append(i > 1 ? "," : "").append(i);
+		}
+		products.append(']');
+
+		mockMvc.perform(post("/products/batch").contentType(MediaType.APPLICATION_JSON).content(products.toString()))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/products").param("ids", ids.toString()))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(delete("/products/batch").contentType(MediaType.APPLICATION_JSON).content("[" + ids + "]"))
+				.andExpect(status().isBadRequest());
+		// Отклоненный пакет не записан даже частично
+		assertTrue(repository.findPage(null, 1).isEmpty());
+	}
+
+	@Test
+	void priceSearchRejectsNonFiniteBounds() throws Exception {
+		fill(5);
+		for (String bound : List.of("min", "max")) {
+			for (String value : List.of("NaN", "Infinity", "-Infinity")) {
+				mockMvc.perform(get("/products/search/price").param(bound, value))
+						.andExpect(status().isBadRequest());
+			}
+		}
+		mockMvc.perform(get("/products/search/price").param("min", "2").param("max", "4").param("order", "desc"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(3))
+				.andExpect(jsonPath("$[0].price").value(4.0));
+	}
+
+	@Test
+	void productReadsAreConditionalOnVersion() throws Exception {
+		fill(1);
+		mockMvc.perform(get("/products/1"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ETAG, tag(1)));
+		mockMvc.perform(get("/products/1").header(HttpHeaders.IF_NONE_MATCH, tag(1)))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+
+		repository.update(1L, new Product(null, "Новое имя", 2));
+		mockMvc.perform(get("/products/1").header(HttpHeaders.IF_NONE_MATCH, tag(1)))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ETAG, tag(2)))
+				.andExpect(jsonPath("$.name").value("Новое имя"));
+	}
+
+	@Test
+	void conditionalUpdateRejectsStaleVersion() throws Exception {
+		fill(1);
+		String body = "{\"name\":\"Кефир\",\"price\":90.0}";
+		mockMvc.perform(put("/products/1").header(HttpHeaders.IF_MATCH, tag(1))
+						.contentType(MediaType.APPLICATION_JSON).content(body))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ETAG, tag(2)));
+
+		// Та же версия еще раз - продукт уже изменили: 412 и текущий ETag, продукт не тронут
+		mockMvc.perform(put("/products/1").header(HttpHeaders.IF_MATCH, tag(1))
+						.contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"Ряженка\",\"price\":95.0}"))
+				.andExpect(status().isPreconditionFailed())
+				.andExpect(header().string(HttpHeaders.ETAG, tag(2)));
+		// Слабый ETag If-Match не принимает даже с текущей версией (строгое сравнение)
+		mockMvc.perform(put("/products/1").header(HttpHeaders.IF_MATCH, "W/" + tag(2))
+						.contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"Ряженка\",\"price\":95.0}"))
+				.andExpect(status().isPreconditionFailed());
+		assertEquals("Кефир", repository.findById(1L).orElseThrow().getName());
+		assertEquals(2L, repository.findById(1L).orElseThrow().getVersion());
+	}
+
+	@Test
+	void conditionalUpdateOfMissingProductFailsPrecondition() throws Exception {
+		fill(1);
+		String body = "{\"name\":\"Кефир\",\"price\":90.0}";
+		mockMvc.perform(put("/products/42").contentType(MediaType.APPLICATION_JSON).content(body))
+				.andExpect(status().isNotFound());
+		// If-Match: * требует, чтобы продукт существовал
+		mockMvc.perform(put("/products/42").header(HttpHeaders.IF_MATCH, "*")
+						.contentType(MediaType.APPLICATION_JSON).content(body))
+				.andExpect(status().isPreconditionFailed());
+		mockMvc.perform(put("/products/1").header(HttpHeaders.IF_MATCH, "*")
+						.contentType(MediaType.APPLICATION_JSON).content(body))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ETAG, tag(2)));
+		assertTrue(repository.findById(42L).isEmpty());
+	}
+
+	@Test
+	void productETagsOfPreviousRunDoNotMatch() throws Exception {
+		fill(1);
+		String previous = tag(1);
+
+		// Перезапуск с хранилищем в памяти: ID и версии снова с 1, но эпоха ленты новая
+		setUp();
+		fill(1);
+		mockMvc.perform(get("/products/1").header(HttpHeaders.IF_NONE_MATCH, previous))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ETAG, tag(1)));
+		mockMvc.perform(put("/products/1").header(HttpHeaders.IF_MATCH, previous)
+						.contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"Кефир\",\"price\":90.0}"))
+				.andExpect(status().isPreconditionFailed());
+		assertEquals(1L, repository.findById(1L).orElseThrow().getVersion());
+	}
+
+	@Test
+	void listReadsAreNotModifiedUntilCatalogChanges() throws Exception {
+		fill(3);
+		String etag = mockMvc.perform(get("/products").param("limit", "10"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		mockMvc.perform(get("/products").param("limit", "10").header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isNotModified());
+		mockMvc.perform(get("/products").param("ids", "1,2").header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isNotModified());
+		// Полная выдача отвечает 304 без обхода хранилища, то есть без асинхронной обработки
+		mockMvc.perform(get("/products").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(request().asyncNotStarted())
+				.andExpect(status().isNotModified());
+		// NDJSON того же состояния - другой ETag
+		MvcResult started = mockMvc.perform(get("/products").accept(ProductController.APPLICATION_NDJSON_VALUE)
+						.header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk());
+
+		repository.deleteById(3L);
+		mockMvc.perform(get("/products").param("limit", "10").header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(2));
+	}
+
+	// ETag продукта текущего запуска
+	private String tag(long version) {
+		return "\"" + feed.epoch() + "-" + version + "\"";
+	}
+
+	private void fill(int count) {
+		for (int i = 1; i <= count; i++) {
+			repository.save(new Product(null, "Товар " + i, i));
+		}
+	}
+
+	private static List<Long> expectedIds(int count, Long deleted) {
+		List<Long> ids = new ArrayList<>();
+		for (long id = 1; id <= count; id++) {
+			if (id != deleted) {
+				ids.add(id);
+			}
+		}
+		return ids;
+	}
+
+	private static List<Long> ids(List<Product> products) {
+		return products.stream().map(Product::getId).toList();
+	}
+}
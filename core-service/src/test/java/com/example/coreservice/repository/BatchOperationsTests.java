@@ -0,0 +1,46 @@
+package com.example.coreservice.repository;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.wal.FsyncPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchOperationsTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void batchOperationsBehaveTheSameInEveryStore() {
+		try (PersistentProductRepository persistent = new PersistentProductRepository(directory, FsyncPolicy.ALWAYS,
+				Duration.ofMillis(10), 1 << 20, Duration.ZERO)) {
+			for (ProductRepository repository : List.of(new InMemoryProductRepository(), new CompactProductRepository(),
+					new IndexedProductRepository(new InMemoryProductRepository()), persistent)) {
+				String store = repository.getClass().getSimpleName();
+
+				List<Product> saved = repository.saveAll(List.of(new Product(null, "Молоко", 80.0),
+						new Product(null, "Хлеб", 45.5), new Product(null, "Сыр", 500.0)));
+				assertEquals(List.of(1L, 2L, 3L), saved.stream().map(Product::getId).toList(), store);
+				assertTrue(saved.stream().allMatch(product -> product.getVersion() == 1), store);
+
+				// Порядок запрошенных ID сохраняется, отсутствующие пропускаются
+				List<Product> found = repository.findAllById(List.of(3L, 42L, 1L));
+				assertEquals(List.of(saved.get(2), saved.get(0)), found, store);
+
+				assertEquals(List.of(2L, 3L), repository.deleteAllById(List.of(2L, 42L, 3L)), store);
+				assertFalse(repository.findById(2L).isPresent(), store);
+				assertEquals(List.of(saved.get(0)), repository.findAllById(List.of(1L, 2L, 3L)), store);
+				assertTrue(repository.deleteAllById(List.of(2L, 3L)).isEmpty(), store);
+				assertTrue(repository.saveAll(List.of()).isEmpty(), store);
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.example.coreservice.repository;
+
+import com.example.coreservice.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactProductRepositoryTests {
+
+	@Test
+	void behavesLikeInMemoryRepositoryAcrossCompactions() {
+		CompactProductRepository compact = new CompactProductRepository();
+		InMemoryProductRepository reference = new InMemoryProductRepository();
+
+		List<Product> batch = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) {
+			batch.add(new Product(null, i % 7 == 0 ? null : "Товар " + i, i * 1.5));
+		}
+		compact.saveAll(copy(batch));
+		reference.saveAll(copy(batch));
+		// Удаляем большую часть продуктов и переименовываем оставшиеся, чтобы сработало компактирование
+		List<Long> toDelete = LongStream.rangeClosed(1, 10_000).filter(id -> id % 3 != 0).boxed().collect(Collectors.toList());
+		assertEquals(reference.deleteAllById(toDelete), compact.deleteAllById(toDelete));
+		for (long id = 3; id <= 10_000; id += 3) {
+			Product renamed = new Product(null, "Новое имя " + id, id);
+			assertEquals(reference.update(id, renamed), compact.update(id, new Product(null, renamed.getName(), id)));
+		}
+
+		assertEquals(reference.findAll(), compact.findAll());
+		assertEquals(reference.findPage(4500L, 50), compact.findPage(4500L, 50));
+		assertEquals(reference.findAllById(List.of(3L, 4L, 9999L)), compact.findAllById(List.of(3L, 4L, 9999L)));
+		assertFalse(compact.findById(1L).isPresent());
+		assertEquals(10_001L, compact.save(new Product(null, "x", 1)).getId());
+	}
+
+	@Test
+	void pagesFollowIdOrder() {
+		CompactProductRepository compact = new CompactProductRepository();
+		Map<Long, Product> expected = new TreeMap<>();
+		for (int i = 0; i < 100; i++) {
+			Product saved = compact.save(new Product(null, "p" + i, i));
+			expected.put(saved.getId(), new Product(saved.getId(), saved.getName(), saved.getPrice(), 1));
+		}
+		compact.deleteById(50L);
+		expected.remove(50L);
+
+		List<Product> walked = new ArrayList<>();
+		Long cursor = null;
+		List<Product> page;
+		do {
+			page = compact.findPage(cursor, 7);
+			walked.addAll(page);
+			if (!page.isEmpty()) {
+				cursor = page.get(page.size() - 1).getId();
+			}
+		} while (page.size() == 7);
+		assertEquals(new ArrayList<>(expected.values()), walked);
+	}
+
+	@Test
+	void sentinelIdsAreNeverFound() {
+		CompactProductRepository compact = new CompactProductRepository();
+		compact.saveAll(List.of(new Product(null, "a", 1), new Product(null, "b", 2)));
+
+		// 0 и -1 - отметки пустой и удаленной ячейки в индексе, а не ID продуктов
+		for (long id : new long[]{0L, -1L}) {
+			assertFalse(compact.findById(id).isPresent());
+			assertFalse(compact.deleteById(id));
+			assertTrue(compact.update(id, new Product(null, "x", 3)).isEmpty());
+			assertTrue(compact.findAllById(List.of(id)).isEmpty());
+			assertTrue(compact.deleteAllById(List.of(id)).isEmpty());
+		}
+		assertEquals(List.of(1L, 2L), compact.findAll().stream().map(Product::getId).toList());
+		assertEquals("b", compact.findById(2L).orElseThrow().getName());
+	}
+
+	private static List<Product> copy(List<Product> products) {
+		return products.stream().map(p -> new Product(null, p.getName(), p.getPrice())).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,47 @@
+package com.example.coreservice.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdAllocatorTests {
+
+	@Test
+	void shardsAllocateDisjointIdsTheyOwn() {
+		int shards = 3;
+		Set<Long> seen = new HashSet<>();
+		for (int shard = 0; shard < shards; shard++) {
+			IdAllocator allocator = new IdAllocator(shard, shards, 4);
+			long previous = 0;
+			for (int i = 0; i < 100; i++) {
+				long id = allocator.next();
+				assertTrue(id > previous, "IDs of a shard must grow");
+				assertEquals(shard, allocator.shardOf(id));
+				assertTrue(seen.add(id), "ID " + id + " allocated twice");
+				previous = id;
+			}
+		}
+		// Вместе шарды заполняют пространство ID без пропусков
+		for (long id = 1; id <= 300; id++) {
+			assertTrue(seen.contains(id), "ID " + id + " not allocated");
+		}
+	}
+
+	@Test
+	void advancePastContinuesAfterRecoveredIds() {
+		IdAllocator single = IdAllocator.single();
+		single.advancePast(41);
+		assertEquals(42, single.next());
+
+		IdAllocator second = new IdAllocator(1, 2, 10);
+		second.advancePast(15); // Свой блок 11..20
+		assertEquals(16, second.next());
+		second.advancePast(25); // Чужой блок 21..30 - следующий свой начинается с 31
+		assertEquals(31, second.next());
+		assertEquals(31, second.lastId());
+	}
+}
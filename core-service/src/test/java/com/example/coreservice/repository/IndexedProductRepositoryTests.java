@@ -0,0 +1,117 @@
+package com.example.coreservice.repository;
+
+import com.example.coreservice.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexedProductRepositoryTests {
+
+	private static final String[] WORDS = {"Молоко", "молочный", "Хлеб", "хлебец", "Сыр", "сырок", "Milk", "milkshake"};
+
+	@Test
+	void indexedSearchMatchesFullScanAfterConcurrentWrites() throws Exception {
+		InMemoryProductRepository store = new InMemoryProductRepository();
+		IndexedProductRepository indexed = new IndexedProductRepository(store);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<?>[] writers = new Future<?>[4];
+			for (int t = 0; t < writers.length; t++) {
+				long seed = t;
+				writers[t] = executor.submit(() -> randomWrites(indexed, new Random(seed)));
+			}
+			for (Future<?> writer : writers) {
+				writer.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// Эталон - реализации по умолчанию, которые обходят все хранилище
+		for (String word : WORDS) {
+			assertEquals(store.findByNamePrefix(word, 1000), indexed.findByNamePrefix(word, 1000), word);
+			assertEquals(store.findByNameContaining(word.substring(1), 1000), indexed.findByNameContaining(word.substring(1), 1000), word);
+		}
+		assertEquals(store.findByNameContaining("ок", 1000), indexed.findByNameContaining("ок", 1000));
+		assertEquals(store.findByPriceBetween(10, 60, false, 1000), indexed.findByPriceBetween(10, 60, false, 1000));
+		assertEquals(store.findByPriceBetween(10, 60, true, 25), indexed.findByPriceBetween(10, 60, true, 25));
+	}
+
+	@Test
+	void indexesProductsThatExistedBeforeWrapping() {
+		InMemoryProductRepository store = new InMemoryProductRepository();
+		store.saveAll(List.of(new Product(null, "Кефир", 70), new Product(null, "Кекс", 120)));
+		IndexedProductRepository indexed = new IndexedProductRepository(store);
+
+		assertEquals(List.of(new Product(2L, "Кекс", 120, 1), new Product(1L, "Кефир", 70, 1)), indexed.findByNamePrefix("ке", 10));
+		assertEquals(List.of(new Product(2L, "Кекс", 120, 1)), indexed.findByPriceBetween(100, 200, false, 10));
+	}
+
+	@Test
+	void searchesNeverMissOrRepeatProductsWhileTheyMove() throws Exception {
+		IndexedProductRepository indexed = new IndexedProductRepository(new InMemoryProductRepository());
+		int products = 200;
+		for (int i = 0; i < products; i++) {
+			indexed.save(new Product(null, "Товар " + i, i % 100));
+		}
+
+		// Цены и имена все время меняются, но каждый продукт остается в диапазоне [0, 100] и с префиксом "товар"
+		AtomicBoolean stop = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			Future<?>[] writers = new Future<?>[2];
+			for (int t = 0; t < writers.length; t++) {
+				Random random = new Random(t);
+				writers[t] = executor.submit(() -> {
+					while (!stop.get()) {
+						long id = 1 + random.nextInt(products);
+						indexed.update(id, new Product(null, "Товар " + random.nextInt(1000), random.nextInt(101)));
+					}
+				});
+			}
+			for (int i = 0; i < 2000; i++) {
+				List<Product> byPrice = indexed.findByPriceBetween(0, 100, false, 1000);
+				assertEquals(products, byPrice.stream().map(Product::getId).distinct().count());
+				assertEquals(products, byPrice.size());
+				for (int j = 1; j < byPrice.size(); j++) {
+					assertTrue(byPrice.get(j - 1).getPrice() <= byPrice.get(j).getPrice(), "price order");
+				}
+				List<Product> byName = indexed.findByNamePrefix("товар", 1000);
+				assertEquals(products, byName.stream().map(Product::getId).distinct().count());
+				assertEquals(products, byName.size());
+			}
+		} finally {
+			stop.set(true);
+			executor.shutdown();
+		}
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	private static void randomWrites(ProductRepository repository, Random random) {
+		for (int i = 0; i < 2000; i++) {
+			String name = WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(50);
+			double price = random.nextInt(100);
+			int action = random.nextInt(10);
+			long id = 1 + random.nextInt(Math.max(1, i * 4));
+			if (action < 5) {
+				repository.save(new Product(null, name, price));
+			} else if (action < 8) {
+				repository.update(id, new Product(null, name, price));
+			} else if (action < 9) {
+				repository.deleteById(id);
+			} else {
+				repository.deleteAllById(List.of(id, id + 1, id + 2));
+			}
+		}
+	}
+}
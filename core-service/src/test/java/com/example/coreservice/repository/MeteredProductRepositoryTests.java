@@ -0,0 +1,32 @@
+package com.example.coreservice.repository;
+
+import com.example.coreservice.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MeteredProductRepositoryTests {
+
+	@Test
+	void tracksStoreSizeAndTimesEachOperation() {
+		InMemoryProductRepository store = new InMemoryProductRepository();
+		store.saveAll(List.of(new Product(null, "Уже было", 1.0), new Product(null, "Тоже было", 2.0)));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MeteredProductRepository repository = new MeteredProductRepository(new ObservableProductRepository(store), registry);
+
+		Product saved = repository.save(new Product(null, "Новый", 3.0));
+		repository.saveAll(List.of(new Product(null, "A", 4.0), new Product(null, "B", 5.0)));
+		repository.update(saved.getId(), new Product(null, "Новое имя", 3.5));
+		repository.deleteById(1L);
+		repository.deleteAllById(List.of(2L, 999L));
+		repository.findById(saved.getId());
+
+		assertEquals(3.0, registry.get("core.repository.size").gauge().value());
+		assertEquals(1, registry.get("core.repository.operations").tag("operation", "save").timer().count());
+		assertEquals(1, registry.get("core.repository.operations").tag("operation", "deleteAllById").timer().count());
+		assertEquals(1, registry.get("core.repository.operations").tag("operation", "findById").timer().count());
+	}
+}
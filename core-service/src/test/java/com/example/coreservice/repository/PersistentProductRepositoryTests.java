@@ -0,0 +1,163 @@
+package com.example.coreservice.repository;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.wal.FsyncPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentProductRepositoryTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void restoresStateFromLogAfterRestart() {
+		try (PersistentProductRepository repository = open(FsyncPolicy.ALWAYS)) {
+			repository.save(new Product(null, "Молоко", 80.0));
+			repository.save(new Product(null, "Хлеб", 45.5));
+			repository.save(new Product(null, "Сыр", 500.0));
+			repository.update(2L, new Product(null, "Хлеб ржаной", 50.0));
+			repository.deleteById(1L);
+		}
+		try (PersistentProductRepository repository = open(FsyncPolicy.ALWAYS)) {
+			assertFalse(repository.findById(1L).isPresent());
+			assertEquals(new Product(2L, "Хлеб ржаной", 50.0, 2), repository.findById(2L).orElseThrow());
+			assertEquals(new Product(3L, "Сыр", 500.0, 1), repository.findById(3L).orElseThrow());
+			// Счетчик ID не сбрасывается после перезапуска
+			assertEquals(4L, repository.save(new Product(null, "Масло", 150.0)).getId());
+		}
+	}
+
+	@Test
+	void restoresStateFromSnapshotAndLogTail() {
+		try (PersistentProductRepository repository = open(FsyncPolicy.INTERVAL)) {
+			repository.saveAll(List.of(new Product(null, "a", 1), new Product(null, "b", 2), new Product(null, "c", 3)));
+			repository.snapshot();
+			repository.deleteAllById(List.of(1L));
+			repository.update(3L, new Product(null, "c2", 30));
+		}
+		try (PersistentProductRepository repository = open(FsyncPolicy.NEVER)) {
+			assertEquals(List.of(new Product(2L, "b", 2, 1), new Product(3L, "c2", 30, 2)), repository.findAll());
+		}
+	}
+
+	@Test
+	void conditionalUpdateRejectsStaleVersion() {
+		try (PersistentProductRepository repository = open(FsyncPolicy.NEVER)) {
+			repository.save(new Product(null, "a", 1));
+			assertEquals(2, repository.update(1L, new Product(null, "b", 2), 1).orElseThrow().getVersion());
+			// Второй клиент тоже прочитал версию 1 - его обновление не должно затереть первое
+			ProductVersionConflictException conflict = assertThrows(ProductVersionConflictException.class,
+					() -> repository.update(1L, new Product(null, "c", 3), 1));
+			assertEquals(2, conflict.getCurrentVersion());
+			assertTrue(repository.update(5L, new Product(null, "d", 4), 1).isEmpty());
+		}
+		try (PersistentProductRepository repository = open(FsyncPolicy.NEVER)) {
+			assertEquals(new Product(1L, "b", 2, 2), repository.findById(1L).orElseThrow());
+		}
+	}
+
+	@Test
+	void deletedLastIdIsNotReusedAfterSnapshot() {
+		try (PersistentProductRepository repository = open(FsyncPolicy.NEVER)) {
+			repository.save(new Product(null, "a", 1));
+			repository.save(new Product(null, "b", 2));
+			repository.deleteById(2L);
+			repository.snapshot();
+		}
+		try (PersistentProductRepository repository = open(FsyncPolicy.NEVER)) {
+			assertEquals(3L, repository.save(new Product(null, "c", 3)).getId());
+		}
+	}
+
+	@Test
+	void ignoresTornRecordAtLogTail() throws IOException {
+		try (PersistentProductRepository repository = open(FsyncPolicy.ALWAYS)) {
+			repository.save(new Product(null, "a", 1));
+			repository.save(new Product(null, "b", 2));
+		}
+		// Портим последний байт второй записи - как будто процесс упал посреди записи
+		Path segment;
+		try (Stream<Path> files = Files.list(directory)) {
+			segment = files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().findFirst().orElseThrow();
+		}
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(4);
+			channel.read(header, 0);
+			int firstRecordEnd = 8 + header.getInt(0);
+			header.clear();
+			channel.read(header, firstRecordEnd);
+			int secondRecordEnd = firstRecordEnd + 8 + header.getInt(0);
+			channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), secondRecordEnd - 1);
+		}
+		try (PersistentProductRepository repository = open(FsyncPolicy.ALWAYS)) {
+			assertTrue(repository.findById(1L).isPresent());
+			assertFalse(repository.findById(2L).isPresent());
+		}
+	}
+
+	@Test
+	void failedLogAppendLeavesStoreUnchanged() {
+		// Имя больше сегмента журнала (1 МБ в тестах): запись не помещается
+		String huge = "я".repeat(600_000);
+		try (PersistentProductRepository repository = open(FsyncPolicy.ALWAYS)) {
+			repository.save(new Product(null, "a", 1));
+			repository.save(new Product(null, "b", 2));
+
+			assertThrows(IllegalArgumentException.class, () -> repository.save(new Product(null, huge, 3)));
+			assertThrows(IllegalArgumentException.class, () -> repository.update(1L, new Product(null, huge, 3)));
+			// Пакет не пишется частично: ни один продукт пакета не появился
+			assertThrows(IllegalArgumentException.class, () -> repository.saveAll(
+					List.of(new Product(null, "c", 3), new Product(null, huge, 4))));
+			assertEquals(List.of(new Product(1L, "a", 1, 1), new Product(2L, "b", 2, 1)), repository.findAll());
+
+			repository.close();
+			assertThrows(IllegalStateException.class, () -> repository.deleteById(1L));
+			assertThrows(IllegalStateException.class, () -> repository.deleteAllById(List.of(2L)));
+			assertThrows(IllegalStateException.class, () -> repository.save(new Product(null, "d", 5)));
+			assertEquals(2, repository.findAll().size());
+		}
+		try (PersistentProductRepository repository = open(FsyncPolicy.ALWAYS)) {
+			assertEquals(List.of(new Product(1L, "a", 1, 1), new Product(2L, "b", 2, 1)), repository.findAll());
+		}
+	}
+
+	@Test
+	void refusesDataWrittenWithAnotherShardLayout() {
+		try (PersistentProductRepository repository = open(new IdAllocator(1, 2, 4))) {
+			repository.saveAll(List.of(new Product(null, "a", 1), new Product(null, "b", 2)));
+			repository.snapshot();
+			repository.save(new Product(null, "c", 3));
+		}
+		// Тот же шард с тем же разбиением стартует как обычно
+		try (PersistentProductRepository repository = open(new IdAllocator(1, 2, 4))) {
+			assertEquals(List.of(5L, 6L, 7L), repository.findAll().stream().map(Product::getId).toList());
+		}
+		// Данные шарда 1 открыты другим шардом или с другим размером блока: в них есть чужие ID
+		assertThrows(IllegalStateException.class, () -> open(new IdAllocator(0, 3, 4)));
+		assertThrows(IllegalStateException.class, () -> open(new IdAllocator(1, 2, 8)));
+	}
+
+	private PersistentProductRepository open(FsyncPolicy fsyncPolicy) {
+		return new PersistentProductRepository(directory, fsyncPolicy, Duration.ofMillis(10), 1 << 20, Duration.ZERO);
+	}
+
+	private PersistentProductRepository open(IdAllocator ids) {
+		return new PersistentProductRepository(directory, FsyncPolicy.NEVER, Duration.ofMillis(10), 1 << 20, Duration.ZERO, ids);
+	}
+}
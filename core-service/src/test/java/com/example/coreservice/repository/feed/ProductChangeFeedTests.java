@@ -0,0 +1,45 @@
+package com.example.coreservice.repository.feed;
+
+import com.example.coreservice.model.Product;
+import com.example.coreservice.repository.InMemoryProductRepository;
+import com.example.coreservice.repository.ObservableProductRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductChangeFeedTests {
+
+	@Test
+	void numbersChangesAndResumesOnlyWithinBuffer() throws InterruptedException {
+		ObservableProductRepository repository = new ObservableProductRepository(new InMemoryProductRepository());
+		ProductChangeFeed feed = new ProductChangeFeed(4);
+		repository.addListener(feed);
+
+		Product saved = repository.save(new Product(null, "Товар", 1.0));
+		repository.update(saved.getId(), new Product(null, "Новое имя", 2.0));
+		repository.deleteById(saved.getId());
+
+		List<ProductChange> changes = feed.read(0, 10, 0, TimeUnit.MILLISECONDS);
+		assertEquals(List.of(1L, 2L, 3L), changes.stream().map(ProductChange::seq).toList());
+		assertEquals(ProductChange.Type.UPSERT, changes.get(1).type());
+		assertEquals("Новое имя", changes.get(1).product().getName());
+		assertEquals(ProductChange.Type.DELETE, changes.get(2).type());
+		assertEquals(saved.getId(), changes.get(2).id());
+		// Новых изменений нет - пустой список после ожидания
+		assertTrue(feed.read(3, 10, 10, TimeUnit.MILLISECONDS).isEmpty());
+
+		repository.saveAll(List.of(new Product(null, "A", 1.0), new Product(null, "B", 2.0), new Product(null, "C", 3.0)));
+		// В буфере изменения 3..6: после 2 продолжить можно, после 1 - уже нет
+		assertTrue(feed.canResumeAfter(2));
+		assertFalse(feed.canResumeAfter(1));
+		assertFalse(feed.canResumeAfter(7));
+		assertNull(feed.read(1, 10, 0, TimeUnit.MILLISECONDS));
+		assertEquals(2, feed.read(4, 10, 0, TimeUnit.MILLISECONDS).size());
+	}
+}